@@ -0,0 +1,92 @@
+package com.velorexe.unityandroidble.benchmarks;
+
+import com.velorexe.unityandroidble.BleObject;
+import com.velorexe.unityandroidble.bridge.NotificationBatch;
+import com.velorexe.unityandroidble.transport.UnitySink;
+
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of delivering a burst of notifications to a stub Unity sink,
+ * one CharacteristicValueChanged message each versus a single CharacteristicValuesChanged message built by the NotificationBatch
+ * the NotificationBatcher flushes.
+ * Results are per burst, divide by the batch size for the cost per notification
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DispatchBenchmark {
+    private static final String DEVICE = "AA:BB:CC:DD:EE:FF";
+    private static final String SERVICE = "0000180d-0000-1000-8000-00805f9b34fb";
+    private static final String CHARACTERISTIC = "00002a37-0000-1000-8000-00805f9b34fb";
+
+    @Param({"8", "64"})
+    public int batchSize;
+
+    private byte[] mPayload;
+
+    /**
+     * Stands in for UnityPlayer.UnitySendMessage, the JNI transition itself isn't part of the measurement
+     */
+    private static class BlackholeSink implements UnitySink {
+        Blackhole blackhole;
+
+        @Override
+        public void send(String receiver, String method, String message) {
+            blackhole.consume(message);
+        }
+    }
+
+    private final BlackholeSink mSink = new BlackholeSink();
+
+    @Setup
+    public void setup() {
+        mPayload = new byte[20];
+    }
+
+    @Benchmark
+    public void unbatched(Blackhole blackhole) {
+        mSink.blackhole = blackhole;
+
+        for (int i = 0; i < batchSize; i++) {
+            mSink.send("BleAdapter", "OnBleMessage", createMessage(i).toJson());
+        }
+    }
+
+    @Benchmark
+    public void batched(Blackhole blackhole) throws JSONException {
+        mSink.blackhole = blackhole;
+
+        NotificationBatch batch = new NotificationBatch();
+
+        for (int i = 0; i < batchSize; i++) {
+            batch.add(createMessage(i));
+        }
+
+        mSink.send("BleAdapter", "OnBleMessage", batch.toBleObject().toJson());
+    }
+
+    private BleObject createMessage(int sequence) {
+        BleObject obj = new BleObject("CharacteristicValueChanged");
+
+        obj.device = DEVICE;
+        obj.service = SERVICE;
+        obj.characteristic = CHARACTERISTIC;
+        obj.sequence = sequence;
+        obj.base64Message = Base64.getEncoder().encodeToString(mPayload);
+
+        return obj;
+    }
+}
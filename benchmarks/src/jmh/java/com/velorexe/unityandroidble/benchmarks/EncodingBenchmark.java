@@ -0,0 +1,103 @@
+package com.velorexe.unityandroidble.benchmarks;
+
+import com.velorexe.unityandroidble.BleObject;
+import com.velorexe.unityandroidble.bridge.BinaryBridge;
+import com.velorexe.unityandroidble.bridge.CharacteristicRing;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of getting a single notification ready for Unity: the JSON message, the binary bridge frame and the ring slot.
+ * android.util.Base64 isn't available on a plain JVM, java.util.Base64 runs the same encoding in its place
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EncodingBenchmark {
+    @Param({"20", "244"})
+    public int payloadSize;
+
+    private byte[] mPayload;
+
+    private BinaryBridge mBridge;
+    private CharacteristicRing mRing;
+
+    private long mSequence = 0;
+
+    @Setup
+    public void setup() {
+        mPayload = new byte[payloadSize];
+        new Random(42).nextBytes(mPayload);
+
+        mBridge = new BinaryBridge(1 << 20);
+        mRing = new CharacteristicRing(1024, payloadSize);
+    }
+
+    @Benchmark
+    public String arraysToString() {
+        return Arrays.toString(mPayload);
+    }
+
+    @Benchmark
+    public String base64() {
+        return Base64.getEncoder().encodeToString(mPayload);
+    }
+
+    /**
+     * The message characteristicValueChanged sends per notification without batching or the binary bridge
+     */
+    @Benchmark
+    public String jsonMessage() {
+        BleObject obj = new BleObject("CharacteristicValueChanged");
+
+        obj.device = "AA:BB:CC:DD:EE:FF";
+        obj.service = "0000180d-0000-1000-8000-00805f9b34fb";
+        obj.characteristic = "00002a37-0000-1000-8000-00805f9b34fb";
+        obj.deviceIndex = 0;
+        obj.characteristicIndex = 3;
+        obj.timestamp = mSequence;
+        obj.sequence = (int) mSequence++;
+
+        obj.base64Message = Base64.getEncoder().encodeToString(mPayload);
+
+        return obj.toJson();
+    }
+
+    /**
+     * The message as it was sent before the payload logging was removed from the hot path
+     */
+    @Benchmark
+    public String jsonMessageWithPayloadLog() {
+        String log = Arrays.toString(mPayload);
+        return jsonMessage() + log.length();
+    }
+
+    @Benchmark
+    public boolean binaryBridgeFrame() {
+        boolean written = mBridge.write(0, 3, (int) mSequence, mSequence++, mPayload);
+
+        //Drains right away, the benchmark measures the producer only
+        mBridge.release(mBridge.getWritePosition());
+        return written;
+    }
+
+    @Benchmark
+    public boolean ringSlot() {
+        boolean written = mRing.write(mSequence, (int) mSequence++, mPayload);
+
+        mRing.setReadIndex(mRing.getWriteIndex());
+        return written;
+    }
+}
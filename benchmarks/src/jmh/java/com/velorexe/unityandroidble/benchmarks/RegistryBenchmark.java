@@ -0,0 +1,61 @@
+package com.velorexe.unityandroidble.benchmarks;
+
+import com.velorexe.unityandroidble.DeviceEntry;
+import com.velorexe.unityandroidble.DeviceRegistry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Device lookups by MAC Address from several threads at once, the way the binder threads of a few connections
+ * and Unity's calls hit the registry. The DeviceRegistry is filled by address without BluetoothDevices,
+ * next to the synchronized HashMap it replaced
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Threads(4)
+public class RegistryBenchmark {
+    private static final int DEVICES = 8;
+
+    private final DeviceRegistry mRegistry = new DeviceRegistry();
+    private final Map<String, Object> mSynchronized = Collections.synchronizedMap(new HashMap<String, Object>());
+
+    private final String[] mAddresses = new String[DEVICES];
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next = 0;
+    }
+
+    @Setup
+    public void setup() {
+        for (int i = 0; i < DEVICES; i++) {
+            mAddresses[i] = String.format("AA:BB:CC:DD:EE:%02X", i);
+
+            mRegistry.add(mAddresses[i], null);
+            mSynchronized.put(mAddresses[i], new Object());
+        }
+    }
+
+    @Benchmark
+    public DeviceEntry registryLookup(Cursor cursor) {
+        return mRegistry.get(mAddresses[cursor.next++ & (DEVICES - 1)]);
+    }
+
+    @Benchmark
+    public Object synchronizedLookup(Cursor cursor) {
+        return mSynchronized.get(mAddresses[cursor.next++ & (DEVICES - 1)]);
+    }
+}
@@ -0,0 +1,90 @@
+package com.velorexe.unityandroidble.benchmarks;
+
+import com.velorexe.unityandroidble.connection.GattHandleTable;
+import com.velorexe.unityandroidble.connection.HandleLookup;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning the service and Characteristic strings Unity passes into something a GATT call can use.
+ * GattHandleTable.build needs real BluetoothGattServices, so the HandleLookup behind it is filled directly
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ResolutionBenchmark {
+    private static final int SERVICES = 6;
+    private static final int CHARACTERISTICS_PER_SERVICE = 8;
+
+    private final HandleLookup mLookup = new HandleLookup();
+    private UUID[] mCharacteristics;
+    private UUID[] mServices;
+
+    private String mService;
+    private String mCharacteristic;
+
+    @Setup
+    public void setup() {
+        mCharacteristics = new UUID[SERVICES * CHARACTERISTICS_PER_SERVICE];
+        mServices = new UUID[mCharacteristics.length];
+
+        for (int i = 0; i < SERVICES; i++) {
+            UUID serviceUuid = GattHandleTable.toUuid(String.format("%04x", 0x1800 + i));
+            String service = serviceUuid.toString();
+
+            for (int j = 0; j < CHARACTERISTICS_PER_SERVICE; j++) {
+                int handle = i * CHARACTERISTICS_PER_SERVICE + j;
+                UUID characteristic = GattHandleTable.toUuid(String.format("%04x", 0x2a00 + handle));
+
+                mCharacteristics[handle] = characteristic;
+                mServices[handle] = serviceUuid;
+                mLookup.add(service, characteristic.toString(), handle);
+            }
+        }
+
+        //The last Characteristic is the worst case for the linear search the lookup replaced
+        mService = GattHandleTable.toUuid(String.format("%04x", 0x1800 + SERVICES - 1)).toString();
+        mCharacteristic = mCharacteristics[mCharacteristics.length - 1].toString();
+    }
+
+    /**
+     * What every read and write did per call before the handle table: parse both UUIDs, then search for the Characteristic
+     */
+    @Benchmark
+    public int parseAndSearch() {
+        UUID service = UUID.fromString(mService);
+        UUID characteristic = UUID.fromString(mCharacteristic);
+
+        for (int i = 0; i < mCharacteristics.length; i++) {
+            if (mCharacteristics[i].equals(characteristic) && mServices[i].equals(service)) {
+                return i;
+            }
+        }
+
+        return GattHandleTable.INVALID_HANDLE;
+    }
+
+    @Benchmark
+    public int stringLookup() {
+        return mLookup.get(mService, mCharacteristic);
+    }
+
+    @Benchmark
+    public UUID toUuidShort() {
+        return GattHandleTable.toUuid("2a37");
+    }
+
+    @Benchmark
+    public String toShortUuid() {
+        return GattHandleTable.toShortUuid(mCharacteristic);
+    }
+}
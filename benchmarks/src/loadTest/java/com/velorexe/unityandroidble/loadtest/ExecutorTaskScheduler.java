@@ -0,0 +1,90 @@
+package com.velorexe.unityandroidble.loadtest;
+
+import com.velorexe.unityandroidble.transport.TaskScheduler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs delayed tasks on an executor, with the time of System.nanoTime. Stands in for the main Looper on a plain JVM,
+ * a single-threaded executor shared by every connection behaves like it
+ */
+public class ExecutorTaskScheduler implements TaskScheduler {
+    private final ScheduledExecutorService mExecutor;
+
+    //Pending runs of every task, so removeCallbacks can cancel them like Handler.removeCallbacks does
+    private final Map<Runnable, List<Posted>> mPending = new HashMap<Runnable, List<Posted>>();
+
+    public ExecutorTaskScheduler(ScheduledExecutorService executor) {
+        mExecutor = executor;
+    }
+
+    @Override
+    public void postDelayed(Runnable task, long delayMillis) {
+        Posted posted = new Posted(task);
+
+        synchronized (this) {
+            List<Posted> pending = mPending.get(task);
+
+            if (pending == null) {
+                pending = new ArrayList<Posted>();
+                mPending.put(task, pending);
+            }
+
+            pending.add(posted);
+            posted.future = mExecutor.schedule(posted, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public synchronized void removeCallbacks(Runnable task) {
+        List<Posted> pending = mPending.remove(task);
+
+        if (pending != null) {
+            for (int i = 0; i < pending.size(); i++) {
+                pending.get(i).future.cancel(false);
+            }
+        }
+    }
+
+    @Override
+    public long elapsedRealtimeNanos() {
+        return System.nanoTime();
+    }
+
+    private synchronized boolean take(Posted posted) {
+        List<Posted> pending = mPending.get(posted.task);
+
+        //Removed in the meantime, the run got cancelled
+        if (pending == null || !pending.remove(posted)) {
+            return false;
+        }
+
+        if (pending.isEmpty()) {
+            mPending.remove(posted.task);
+        }
+
+        return true;
+    }
+
+    private class Posted implements Runnable {
+        final Runnable task;
+        ScheduledFuture<?> future;
+
+        Posted(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            if (take(this)) {
+                task.run();
+            }
+        }
+    }
+}
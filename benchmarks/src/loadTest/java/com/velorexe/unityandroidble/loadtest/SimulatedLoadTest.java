@@ -0,0 +1,501 @@
+package com.velorexe.unityandroidble.loadtest;
+
+import com.velorexe.unityandroidble.BleLog;
+import com.velorexe.unityandroidble.bridge.BinaryBridge;
+import com.velorexe.unityandroidble.bridge.CharacteristicRing;
+import com.velorexe.unityandroidble.bridge.MessageDispatcher;
+import com.velorexe.unityandroidble.bridge.NotificationRouter;
+import com.velorexe.unityandroidble.connection.GattConnection;
+import com.velorexe.unityandroidble.connection.GattOperationQueue;
+import com.velorexe.unityandroidble.connection.GattSlotScheduler;
+import com.velorexe.unityandroidble.connection.ReadCharacteristicOperation;
+import com.velorexe.unityandroidble.connection.SetNotificationOperation;
+import com.velorexe.unityandroidble.connection.WriteCharacteristicOperation;
+import com.velorexe.unityandroidble.metrics.CharacteristicMetrics;
+import com.velorexe.unityandroidble.metrics.LatencyHistogram;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load test of a connection on a plain JVM. Every SimulatedPeripheral is driven by the same GattConnection
+ * ConnectionService uses on Android: its subscriptions go through the GattOperationQueue, a loop of writes and reads
+ * keeps the queue busy while the Characteristics notify, and every notification goes through the same NotificationRouter,
+ * into a CharacteristicRing, the BinaryBridge or a single-threaded stand-in for the MessageDispatcher.
+ * A consumer thread drains them the way Unity does.
+ *
+ * Every notification carries the peripheral's counter, which has to match its sequence number when it arrives,
+ * so the test exits with 1 if a notification got reordered or lost without being counted as dropped,
+ * if an operation failed or if a read didn't return the value written before it.
+ * <pre>
+ * java SimulatedLoadTest [peripherals] [characteristics] [notifications per second] [seconds] [ring|bridge|message] [operation slots]
+ * </pre>
+ */
+public class SimulatedLoadTest {
+    private static final int ROUTE_RING = 0;
+    private static final int ROUTE_BRIDGE = 1;
+    private static final int ROUTE_MESSAGE = 2;
+
+    private static final int BRIDGE_CAPACITY = 1 << 20;
+
+    //Only used when a failed operation is reported, which the test counts instead
+    private static final String SERVICE_UUID = "0000fff0-0000-1000-8000-00805f9b34fb";
+
+    //Characteristic the writes and reads go to, it notifies as well
+    private static final int ROUND_TRIP_HANDLE = 0;
+
+    private final int mRoute;
+    private final Connection[] mConnections;
+
+    private final BinaryBridge mBridge;
+    private final ThreadPoolExecutor mDispatcher;
+
+    private final ScheduledThreadPoolExecutor[] mExecutors;
+
+    //A single thread for the timeouts of every operation queue, the same as the main Looper
+    private final ScheduledThreadPoolExecutor mTimerExecutor = new ScheduledThreadPoolExecutor(1);
+    private final ExecutorTaskScheduler mTimer = new ExecutorTaskScheduler(mTimerExecutor);
+    private final GattSlotScheduler mSlotScheduler = new GattSlotScheduler();
+
+    private final CountDownLatch mSubscribed;
+    private final CountDownLatch mStopped;
+    private volatile boolean mOperating = true;
+    private volatile boolean mRunning = true;
+
+    //Time from a notification arriving until the consumer has read it
+    private final LatencyHistogram mLatency = new LatencyHistogram();
+    //Time from an operation being queued until it completed
+    private final LatencyHistogram mOperationLatency = new LatencyHistogram();
+
+    private final AtomicLong mNotifications = new AtomicLong();
+    private final AtomicLong mDropped = new AtomicLong();
+    private final AtomicLong mReceived = new AtomicLong();
+    private final AtomicLong mMismatched = new AtomicLong();
+
+    private final AtomicLong mOperations = new AtomicLong();
+    private final AtomicLong mFailedOperations = new AtomicLong();
+    private final AtomicLong mMismatchedReads = new AtomicLong();
+
+    public static void main(String[] args) throws InterruptedException {
+        int peripherals = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int characteristics = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        double rate = args.length > 2 ? Double.parseDouble(args[2]) : 100;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        String route = args.length > 4 ? args[4] : "message";
+        int slots = args.length > 5 ? Integer.parseInt(args[5]) : GattSlotScheduler.UNLIMITED;
+
+        //Logging goes through android.util.Log, which doesn't exist here
+        BleLog.setLevel(BleLog.NONE);
+
+        int routeIndex;
+        if ("ring".equals(route)) {
+            routeIndex = ROUTE_RING;
+        } else if ("bridge".equals(route)) {
+            routeIndex = ROUTE_BRIDGE;
+        } else if ("message".equals(route)) {
+            routeIndex = ROUTE_MESSAGE;
+        } else {
+            System.err.println("Unknown route " + route + ", expected ring, bridge or message");
+            System.exit(2);
+            return;
+        }
+
+        System.out.println(String.format(Locale.US, "%d peripherals, %d characteristics each at %.1f/s, %d seconds through %s",
+                peripherals, characteristics, rate, seconds, route));
+
+        SimulatedLoadTest test = new SimulatedLoadTest(peripherals, characteristics, rate, routeIndex, slots);
+        System.exit(test.run(seconds) ? 0 : 1);
+    }
+
+    /**
+     * @param peripherals     the amount of simulated peripherals
+     * @param characteristics the amount of Characteristics of every peripheral, all of them notify
+     * @param rate            the notifications per second of every Characteristic
+     * @param route           one of the ROUTE constants
+     * @param slots           how many operations may be in flight across every connection, GattSlotScheduler.UNLIMITED for no limit
+     */
+    public SimulatedLoadTest(int peripherals, int characteristics, double rate, int route, int slots) {
+        mRoute = route;
+        mConnections = new Connection[peripherals];
+        mExecutors = new ScheduledThreadPoolExecutor[peripherals];
+        mSubscribed = new CountDownLatch(peripherals);
+        mStopped = new CountDownLatch(peripherals);
+
+        mSlotScheduler.setMaxSlots(slots);
+
+        mBridge = route == ROUTE_BRIDGE ? new BinaryBridge(BRIDGE_CAPACITY) : null;
+        mDispatcher = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(MessageDispatcher.DEFAULT_CAPACITY), new ThreadPoolExecutor.AbortPolicy());
+
+        SimulatedPeripheral.Config config = new SimulatedPeripheral.Config();
+        config.characteristicCount = characteristics;
+        config.notificationRates = new double[characteristics];
+        config.payloadSize = 20;
+
+        for (int i = 0; i < characteristics; i++) {
+            config.notificationRates[i] = rate;
+        }
+
+        for (int i = 0; i < peripherals; i++) {
+            String address = String.format(Locale.US, "00:00:00:00:%02X:%02X", i >> 8, i & 0xFF);
+            //A thread per peripheral, the same as the binder thread every notification of a connection arrives on
+            mExecutors[i] = new ScheduledThreadPoolExecutor(1);
+            mConnections[i] = new Connection(i, new SimulatedPeripheral(address, config, mExecutors[i]));
+        }
+    }
+
+    /**
+     * Connects to every peripheral, subscribes to all of their Characteristics and lets them notify for a while,
+     * writing and reading one of them over and over in the meantime
+     *
+     * @param seconds how long the peripherals notify
+     * @return true if every notification arrived in order with the sequence number matching its counter,
+     * and every operation succeeded with the reads returning what was written
+     */
+    public boolean run(int seconds) throws InterruptedException {
+        Thread consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (mRunning) {
+                    drain();
+
+                    try {
+                        //About the frame time of Unity, which drains once per frame
+                        Thread.sleep(1);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+
+                drain();
+            }
+        }, "SimulatedLoadTest consumer");
+
+        if (mRoute != ROUTE_MESSAGE) {
+            consumer.start();
+        }
+
+        for (int i = 0; i < mConnections.length; i++) {
+            mConnections[i].peripheral.connect();
+        }
+
+        if (!mSubscribed.await(30, TimeUnit.SECONDS)) {
+            System.err.println("Timed out subscribing to the peripherals");
+            return false;
+        }
+
+        long start = System.nanoTime();
+        Thread.sleep(seconds * 1000L);
+
+        //Let the operations that are in flight complete, closing a peripheral drops their callbacks
+        mOperating = false;
+        if (!mStopped.await(10, TimeUnit.SECONDS)) {
+            System.err.println("Timed out waiting for the operations to complete");
+            return false;
+        }
+
+        for (int i = 0; i < mConnections.length; i++) {
+            mConnections[i].peripheral.close();
+            mExecutors[i].shutdown();
+        }
+
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        //Notifications that were already being routed still count
+        for (int i = 0; i < mExecutors.length; i++) {
+            mExecutors[i].awaitTermination(10, TimeUnit.SECONDS);
+        }
+
+        mRunning = false;
+        consumer.join();
+
+        mDispatcher.shutdown();
+        mDispatcher.awaitTermination(10, TimeUnit.SECONDS);
+
+        mTimerExecutor.shutdownNow();
+
+        long notifications = mNotifications.get();
+        long operations = mOperations.get();
+
+        System.out.println(String.format(Locale.US, "notifications %d (%.0f/s), received %d, dropped %d, mismatched %d",
+                notifications, notifications / elapsed, mReceived.get(), mDropped.get(), mMismatched.get()));
+        System.out.println(String.format(Locale.US, "latency until read p50 %dus, p99 %dus, p99.9 %dus",
+                mLatency.getPercentile(50), mLatency.getPercentile(99), mLatency.getPercentile(99.9)));
+        System.out.println(String.format(Locale.US, "operations %d (%.0f/s), failed %d, mismatched reads %d",
+                operations, operations / elapsed, mFailedOperations.get(), mMismatchedReads.get()));
+        System.out.println(String.format(Locale.US, "operation latency p50 %dus, p99 %dus, p99.9 %dus",
+                mOperationLatency.getPercentile(50), mOperationLatency.getPercentile(99), mOperationLatency.getPercentile(99.9)));
+
+        return mMismatched.get() == 0 && mReceived.get() + mDropped.get() == notifications
+                && mFailedOperations.get() == 0 && mMismatchedReads.get() == 0;
+    }
+
+    private void drain() {
+        if (mRoute == ROUTE_BRIDGE) {
+            drainBridge();
+            return;
+        }
+
+        for (int i = 0; i < mConnections.length; i++) {
+            CharacteristicRing[] rings = mConnections[i].rings;
+
+            for (int j = 0; j < rings.length; j++) {
+                if (rings[j] != null) {
+                    drainRing(mConnections[i], j, rings[j]);
+                }
+            }
+        }
+    }
+
+    private void drainRing(Connection connection, int handle, CharacteristicRing ring) {
+        ByteBuffer buffer = ring.getBuffer();
+
+        long read = connection.readIndices[handle];
+        long write = ring.getWriteIndex();
+
+        for (; read < write; read++) {
+            int offset = CharacteristicRing.HEADER_SIZE + (int) (read & (ring.getSlotCount() - 1)) * ring.getSlotSize();
+
+            int sequence = buffer.getInt(offset + 4);
+            long timestamp = buffer.getLong(offset + 8);
+            int counter = buffer.getInt(offset + CharacteristicRing.SLOT_HEADER_SIZE);
+
+            receive(connection, handle, sequence, Integer.MAX_VALUE, counter, timestamp);
+        }
+
+        connection.readIndices[handle] = read;
+        ring.setReadIndex(read);
+    }
+
+    private void drainBridge() {
+        ByteBuffer buffer = mBridge.getBuffer();
+
+        long position = mBridge.getReadPosition();
+        long write = mBridge.getWritePosition();
+
+        while (position < write) {
+            int offset = (int) (position & (mBridge.getCapacity() - 1));
+
+            int device = buffer.getShort(offset) & 0xFFFF;
+            int handle = buffer.getShort(offset + 2) & 0xFFFF;
+            int length = buffer.getShort(offset + 4) & 0xFFFF;
+
+            if (device != BinaryBridge.PADDING_INDEX) {
+                int sequence = buffer.getShort(offset + 6) & 0xFFFF;
+                long timestamp = buffer.getLong(offset + 8);
+                int counter = buffer.getInt(offset + BinaryBridge.HEADER_SIZE);
+
+                //Frames only carry the lower 16 bits of the sequence number
+                receive(mConnections[device], handle, sequence, 0xFFFF, counter, timestamp);
+            }
+
+            position += (BinaryBridge.HEADER_SIZE + length + BinaryBridge.FRAME_ALIGNMENT - 1) & -BinaryBridge.FRAME_ALIGNMENT;
+        }
+
+        mBridge.release(position);
+    }
+
+    //Only called from the consumer or the dispatcher thread, never both in the same run
+    private void receive(Connection connection, int handle, int sequence, int sequenceMask, int counter, long timestamp) {
+        mLatency.recordNanos(System.nanoTime() - timestamp);
+        mReceived.incrementAndGet();
+
+        //Drops leave a gap, but a counter has to match its sequence number and never go back
+        if (sequence != (counter & sequenceMask) || counter <= connection.lastCounters[handle]) {
+            mMismatched.incrementAndGet();
+        }
+
+        connection.lastCounters[handle] = counter;
+    }
+
+    private static int readCounter(byte[] data) {
+        return (data[0] & 0xFF) | (data[1] & 0xFF) << 8 | (data[2] & 0xFF) << 16 | (data[3] & 0xFF) << 24;
+    }
+
+    private static byte[] writeCounter(int counter) {
+        return new byte[] { (byte) counter, (byte) (counter >> 8), (byte) (counter >> 16), (byte) (counter >> 24) };
+    }
+
+    private void onOperation(int status) {
+        mOperations.incrementAndGet();
+
+        if (status != SimulatedPeripheral.STATUS_SUCCESS) {
+            mFailedOperations.incrementAndGet();
+        }
+    }
+
+    /**
+     * A single simulated connection, queueing its subscriptions and operations on a GattConnection like ConnectionService does
+     */
+    private class Connection implements GattConnection.Listener {
+        final SimulatedPeripheral peripheral;
+        final GattConnection gatt;
+        final NotificationRouter router;
+
+        final CharacteristicMetrics[] metrics;
+        final CharacteristicRing[] rings;
+
+        //Consumer state per Characteristic
+        final long[] readIndices;
+        final int[] lastCounters;
+
+        final AtomicInteger pendingSubscriptions = new AtomicInteger();
+
+        //Only touched by the operations of this connection, which complete one after another
+        int roundTrips = 0;
+        byte[] lastRead = null;
+
+        Connection(final int deviceIndex, SimulatedPeripheral peripheral) {
+            this.peripheral = peripheral;
+
+            int count = peripheral.getCharacteristicCount();
+
+            metrics = new CharacteristicMetrics[count];
+            rings = new CharacteristicRing[count];
+            readIndices = new long[count];
+            lastCounters = new int[count];
+
+            for (int i = 0; i < count; i++) {
+                metrics[i] = new CharacteristicMetrics(i);
+                lastCounters[i] = -1;
+            }
+
+            gatt = new GattConnection(peripheral, mTimer, mSlotScheduler, new GattOperationQueue.Listener() {
+                @Override
+                public void onOperation(String device, long queueNanos, long activeNanos, int status) {
+                    if (status == SimulatedPeripheral.STATUS_SUCCESS) {
+                        mOperationLatency.recordNanos(queueNanos + activeNanos);
+                    }
+                }
+            }, this);
+
+            router = new NotificationRouter(deviceIndex, gatt.valueCache, new NotificationRouter.Fallback() {
+                @Override
+                public boolean send(final int handle, final int sequence, final long timestamp, final byte[] data, final CharacteristicMetrics metrics) {
+                    try {
+                        mDispatcher.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                //The same encoding work the dispatcher does before a message goes to Unity
+                                byte[] encoded = Base64.getEncoder().encode(data);
+                                int counter = encoded.length > 0 ? readCounter(data) : -1;
+
+                                receive(Connection.this, handle, sequence, Integer.MAX_VALUE, counter, timestamp);
+                                metrics.onDispatched(System.nanoTime() - timestamp);
+                            }
+                        });
+                    } catch (RejectedExecutionException e) {
+                        return false;
+                    }
+
+                    return true;
+                }
+            });
+            router.resetSequences(count);
+        }
+
+        /**
+         * Queues a subscription to every Characteristic at once, the queue executes them one at a time
+         */
+        private void subscribe() {
+            pendingSubscriptions.set(rings.length);
+
+            for (int i = 0; i < rings.length; i++) {
+                if (mRoute == ROUTE_RING) {
+                    rings[i] = new CharacteristicRing(CharacteristicRing.DEFAULT_SLOT_COUNT, CharacteristicRing.MAX_PAYLOAD_SIZE);
+                    router.setRing(i, rings[i]);
+                }
+
+                gatt.operationQueue.enqueue(new SetNotificationOperation("subscribe", i, SERVICE_UUID, String.valueOf(i), true, false) {
+                    @Override
+                    public void onComplete(String device, int status) {
+                        onOperation(status);
+
+                        if (pendingSubscriptions.decrementAndGet() == 0) {
+                            mSubscribed.countDown();
+                            writeNext();
+                        }
+                    }
+                });
+            }
+        }
+
+        /**
+         * Writes the next counter, alternating between writes with and without response, and reads it back afterwards
+         */
+        private void writeNext() {
+            if (!mOperating) {
+                mStopped.countDown();
+                return;
+            }
+
+            final int counter = roundTrips++;
+
+            gatt.operationQueue.enqueue(new WriteCharacteristicOperation(ROUND_TRIP_HANDLE, SERVICE_UUID, String.valueOf(ROUND_TRIP_HANDLE),
+                    writeCounter(counter), counter % 2 == 0) {
+                @Override
+                public void onComplete(String device, int status) {
+                    onOperation(status);
+                    readBack(counter);
+                }
+            });
+        }
+
+        private void readBack(final int counter) {
+            gatt.operationQueue.enqueue(new ReadCharacteristicOperation(ROUND_TRIP_HANDLE, SERVICE_UUID, String.valueOf(ROUND_TRIP_HANDLE)) {
+                @Override
+                public void onComplete(String device, int status) {
+                    onOperation(status);
+
+                    if (status == SimulatedPeripheral.STATUS_SUCCESS && (lastRead == null || readCounter(lastRead) != counter)) {
+                        mMismatchedReads.incrementAndGet();
+                    }
+
+                    writeNext();
+                }
+            });
+        }
+
+        @Override
+        public void onConnectionStateChange(boolean connected, int status) {
+            if (connected) {
+                peripheral.requestMtu(CharacteristicRing.MAX_PAYLOAD_SIZE + 3);
+            } else {
+                gatt.reset();
+            }
+        }
+
+        @Override
+        public void onMtuChanged(int mtu, int status) {
+            gatt.ready();
+            subscribe();
+        }
+
+        @Override
+        public void onRead(int handle, byte[] value) {
+            lastRead = value;
+        }
+
+        @Override
+        public void onNotification(int handle, long timestamp, byte[] value) {
+            mNotifications.incrementAndGet();
+
+            int routed = router.route(handle, timestamp, value, mBridge, metrics[handle]);
+
+            if (routed == NotificationRouter.DROPPED) {
+                mDropped.incrementAndGet();
+            } else if (routed == NotificationRouter.ROUTED_TO_RING || routed == NotificationRouter.ROUTED_TO_BRIDGE) {
+                metrics[handle].onDispatched(System.nanoTime() - timestamp);
+            }
+        }
+    }
+}
@@ -0,0 +1,361 @@
+package com.velorexe.unityandroidble.loadtest;
+
+import com.velorexe.unityandroidble.transport.GattClient;
+
+import java.util.Arrays;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process GattClient that behaves like a peripheral on the other end of a BLE link, on a plain JVM.
+ * Every operation completes after the configured latency on the executor, only one operation may be outstanding,
+ * writes without response are reported as soon as the peripheral took them, the same as the stack does it,
+ * the MTU is negotiated up to the peripheral's maximum and subscribed Characteristics notify at their configured rate.
+ * Notification payloads start with a little-endian uint32 counter per Characteristic, so drops and reordering can be checked.
+ *
+ * Callbacks run on the executor, a single-threaded executor per peripheral behaves like the binder thread of a connection
+ */
+public class SimulatedPeripheral implements GattClient {
+    public static final int STATUS_SUCCESS = 0;
+    public static final int STATUS_FAILURE = 257;
+    //Status Android reports when the link supervision timeout expires
+    public static final int STATUS_LINK_LOSS = 8;
+
+    public static final int DEFAULT_MTU = 23;
+
+    /**
+     * How the simulated peripheral and its link behave
+     */
+    public static class Config {
+        //Amount of Characteristics, their handles are 0 up to the count
+        public int characteristicCount = 8;
+        //Notifications per second of every Characteristic while it's subscribed to, 0 for a Characteristic that doesn't notify
+        public double[] notificationRates = new double[0];
+        //Payload of every notification, capped to the MTU minus 3
+        public int payloadSize = 20;
+
+        //Largest ATT MTU the peripheral accepts
+        public int maxMtu = 247;
+
+        //Time an operation takes from the request until its callback, about one connection interval
+        public long operationLatencyMicros = 7500;
+        public long connectLatencyMicros = 50000;
+
+        public double getNotificationRate(int handle) {
+            return handle < notificationRates.length ? notificationRates[handle] : 0;
+        }
+    }
+
+    private final String mAddress;
+    private final Config mConfig;
+    private final ScheduledExecutorService mExecutor;
+
+    private final byte[][] mValues;
+    private final int[] mCounters;
+    private final ScheduledFuture<?>[] mNotifiers;
+
+    private volatile Callback mCallback = null;
+    private volatile int mMtu = DEFAULT_MTU;
+
+    private boolean mConnected = false;
+    private boolean mBusy = false;
+
+    public SimulatedPeripheral(String address, Config config, ScheduledExecutorService executor) {
+        mAddress = address;
+        mConfig = config;
+        mExecutor = executor;
+
+        mValues = new byte[config.characteristicCount][];
+        mCounters = new int[config.characteristicCount];
+        mNotifiers = new ScheduledFuture<?>[config.characteristicCount];
+
+        for (int i = 0; i < mValues.length; i++) {
+            mValues[i] = new byte[0];
+        }
+    }
+
+    @Override
+    public String getAddress() {
+        return mAddress;
+    }
+
+    public int getCharacteristicCount() {
+        return mValues.length;
+    }
+
+    @Override
+    public int getMtu() {
+        return mMtu;
+    }
+
+    @Override
+    public void setCallback(Callback callback) {
+        mCallback = callback;
+    }
+
+    @Override
+    public synchronized boolean connect() {
+        if (mConnected) {
+            return false;
+        }
+
+        mExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (SimulatedPeripheral.this) {
+                    mConnected = true;
+                    mBusy = false;
+                }
+
+                Callback callback = mCallback;
+                if (callback != null) {
+                    callback.onConnectionStateChange(SimulatedPeripheral.this, true, STATUS_SUCCESS);
+                }
+            }
+        }, mConfig.connectLatencyMicros, TimeUnit.MICROSECONDS);
+
+        return true;
+    }
+
+    @Override
+    public boolean requestMtu(final int mtu) {
+        if (!startOperation()) {
+            return false;
+        }
+
+        complete(mConfig.operationLatencyMicros, new Runnable() {
+            @Override
+            public void run() {
+                mMtu = Math.max(DEFAULT_MTU, Math.min(mtu, mConfig.maxMtu));
+
+                Callback callback = mCallback;
+                if (callback != null) {
+                    callback.onMtuChanged(SimulatedPeripheral.this, mMtu, STATUS_SUCCESS);
+                }
+            }
+        });
+
+        return true;
+    }
+
+    @Override
+    public boolean read(final int handle) {
+        if (!isValid(handle) || !startOperation()) {
+            return false;
+        }
+
+        complete(mConfig.operationLatencyMicros, new Runnable() {
+            @Override
+            public void run() {
+                byte[] value;
+                synchronized (SimulatedPeripheral.this) {
+                    value = Arrays.copyOf(mValues[handle], mValues[handle].length);
+                }
+
+                Callback callback = mCallback;
+                if (callback != null) {
+                    callback.onRead(SimulatedPeripheral.this, handle, value, STATUS_SUCCESS);
+                }
+            }
+        });
+
+        return true;
+    }
+
+    @Override
+    public boolean write(final int handle, final byte[] value, boolean withResponse) {
+        if (!isValid(handle) || value == null || value.length > mMtu - 3 || !startOperation()) {
+            return false;
+        }
+
+        //Writes without response don't wait for the peripheral, they're only limited by the link itself
+        complete(withResponse ? mConfig.operationLatencyMicros : 0, new Runnable() {
+            @Override
+            public void run() {
+                synchronized (SimulatedPeripheral.this) {
+                    mValues[handle] = Arrays.copyOf(value, value.length);
+                }
+
+                Callback callback = mCallback;
+                if (callback != null) {
+                    callback.onWrite(SimulatedPeripheral.this, handle, STATUS_SUCCESS);
+                }
+            }
+        });
+
+        return true;
+    }
+
+    @Override
+    public boolean setNotification(final int handle, final boolean enable, boolean indicate) {
+        if (!isValid(handle) || !startOperation()) {
+            return false;
+        }
+
+        complete(mConfig.operationLatencyMicros, new Runnable() {
+            @Override
+            public void run() {
+                int status = STATUS_SUCCESS;
+
+                if (!enable) {
+                    stopNotifying(handle);
+                } else if (mConfig.getNotificationRate(handle) > 0) {
+                    startNotifying(handle);
+                } else {
+                    status = STATUS_FAILURE;
+                }
+
+                Callback callback = mCallback;
+                if (callback != null) {
+                    callback.onNotificationStateChanged(SimulatedPeripheral.this, handle, status);
+                }
+            }
+        });
+
+        return true;
+    }
+
+    @Override
+    public void disconnect() {
+        synchronized (this) {
+            if (!mConnected) {
+                return;
+            }
+        }
+
+        mExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                dropLink(STATUS_SUCCESS);
+            }
+        }, mConfig.operationLatencyMicros, TimeUnit.MICROSECONDS);
+    }
+
+    /**
+     * Drops the link right away as if the device went out of range, reported with STATUS_LINK_LOSS
+     */
+    public void simulateLinkLoss() {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                dropLink(STATUS_LINK_LOSS);
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        mCallback = null;
+
+        synchronized (this) {
+            mConnected = false;
+            mBusy = false;
+        }
+
+        for (int i = 0; i < mNotifiers.length; i++) {
+            stopNotifying(i);
+        }
+    }
+
+    private void dropLink(int status) {
+        synchronized (this) {
+            if (!mConnected) {
+                return;
+            }
+
+            mConnected = false;
+            mBusy = false;
+        }
+
+        for (int i = 0; i < mNotifiers.length; i++) {
+            stopNotifying(i);
+        }
+
+        mMtu = DEFAULT_MTU;
+
+        Callback callback = mCallback;
+        if (callback != null) {
+            callback.onConnectionStateChange(this, false, status);
+        }
+    }
+
+    private boolean isValid(int handle) {
+        return handle >= 0 && handle < mValues.length;
+    }
+
+    /**
+     * Claims the single outstanding operation slot of the link, the same rule BluetoothGatt enforces
+     */
+    private synchronized boolean startOperation() {
+        if (!mConnected || mBusy) {
+            return false;
+        }
+
+        mBusy = true;
+        return true;
+    }
+
+    private void complete(long latencyMicros, final Runnable result) {
+        mExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (SimulatedPeripheral.this) {
+                    //The link dropped while the operation was in flight, its callback never arrives
+                    if (!mConnected) {
+                        return;
+                    }
+
+                    mBusy = false;
+                }
+
+                result.run();
+            }
+        }, latencyMicros, TimeUnit.MICROSECONDS);
+    }
+
+    private synchronized void startNotifying(final int handle) {
+        if (mNotifiers[handle] != null) {
+            return;
+        }
+
+        long period = (long) (1000000000.0 / mConfig.getNotificationRate(handle));
+
+        mNotifiers[handle] = mExecutor.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                sendNotification(handle);
+            }
+        }, period, period, TimeUnit.NANOSECONDS);
+    }
+
+    private synchronized void stopNotifying(int handle) {
+        if (mNotifiers[handle] != null) {
+            mNotifiers[handle].cancel(false);
+            mNotifiers[handle] = null;
+        }
+    }
+
+    private void sendNotification(int handle) {
+        byte[] value = new byte[Math.max(4, Math.min(mConfig.payloadSize, mMtu - 3))];
+        int counter;
+
+        synchronized (this) {
+            if (!mConnected) {
+                return;
+            }
+
+            counter = mCounters[handle]++;
+        }
+
+        value[0] = (byte) counter;
+        value[1] = (byte) (counter >> 8);
+        value[2] = (byte) (counter >> 16);
+        value[3] = (byte) (counter >> 24);
+
+        Callback callback = mCallback;
+        if (callback != null) {
+            callback.onNotification(this, handle, System.nanoTime(), value);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.velorexe.unityandroidble;
+
+import android.util.Log;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Leveled logging for the library, written to logcat under a single tag.
+ * The level is a volatile read, so a disabled level only costs the check.
+ * Callers on hot paths guard with {@link #isLoggable(int)} before building a message,
+ * so a disabled level doesn't pay for string concatenation either.
+ * <pre>
+ * if (BleLog.isLoggable(BleLog.DEBUG)) {
+ *     BleLog.d("Connected to " + address);
+ * }
+ * </pre>
+ * Payloads are never logged at any level, they're only written by the sampled payload trace
+ */
+public class BleLog {
+    public static final String TAG = "UnityAndroidBLE";
+
+    //Same values as android.util.Log, so the levels can be passed straight through
+    public static final int VERBOSE = Log.VERBOSE;
+    public static final int DEBUG = Log.DEBUG;
+    public static final int INFO = Log.INFO;
+    public static final int WARN = Log.WARN;
+    public static final int ERROR = Log.ERROR;
+    public static final int NONE = Integer.MAX_VALUE;
+
+    //Bytes of a payload that get written to the trace, anything past it is cut off
+    public static final int MAX_TRACED_BYTES = 64;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static volatile int mLevel = INFO;
+
+    //Every nth payload gets traced, 0 while tracing is disabled
+    private static volatile int mTraceInterval = 0;
+    private static final AtomicLong mTraceCounter = new AtomicLong();
+
+    /**
+     * Sets the lowest level that gets logged
+     *
+     * @param level one of the levels of this class, NONE to log nothing
+     */
+    public static void setLevel(int level) {
+        mLevel = level;
+    }
+
+    public static int getLevel() {
+        return mLevel;
+    }
+
+    public static boolean isLoggable(int level) {
+        return level >= mLevel;
+    }
+
+    public static void v(String message) {
+        if (VERBOSE >= mLevel) {
+            Log.v(TAG, message);
+        }
+    }
+
+    public static void d(String message) {
+        if (DEBUG >= mLevel) {
+            Log.d(TAG, message);
+        }
+    }
+
+    public static void i(String message) {
+        if (INFO >= mLevel) {
+            Log.i(TAG, message);
+        }
+    }
+
+    public static void w(String message) {
+        if (WARN >= mLevel) {
+            Log.w(TAG, message);
+        }
+    }
+
+    public static void e(String message, Throwable throwable) {
+        if (ERROR >= mLevel) {
+            Log.e(TAG, message, throwable);
+        }
+    }
+
+    /**
+     * Traces every nth payload that gets received or written, independent of the log level
+     *
+     * @param interval trace one out of this many payloads, 1 traces all of them and 0 disables the trace
+     */
+    public static void setPayloadTrace(int interval) {
+        mTraceCounter.set(0);
+        mTraceInterval = Math.max(interval, 0);
+    }
+
+    /**
+     * Writes a payload to the trace if tracing is enabled and it's this payload's turn.
+     * Nothing is built while tracing is disabled, so it's safe to call for every notification
+     *
+     * @param event          what happened to the payload, e.g. the command of its message
+     * @param device         the device MAC Address
+     * @param characteristic the Characteristic UUID
+     * @param data           the payload
+     */
+    public static void tracePayload(String event, String device, String characteristic, byte[] data) {
+        int interval = mTraceInterval;
+
+        if (interval <= 0 || mTraceCounter.getAndIncrement() % interval != 0) {
+            return;
+        }
+
+        int length = data == null ? 0 : data.length;
+        int traced = Math.min(length, MAX_TRACED_BYTES);
+
+        StringBuilder builder = new StringBuilder(64 + traced * 2);
+        builder.append(event).append(' ').append(device).append(' ').append(characteristic)
+                .append(" [").append(length).append(" bytes] ");
+
+        for (int i = 0; i < traced; i++) {
+            builder.append(HEX[(data[i] >> 4) & 0x0F]).append(HEX[data[i] & 0x0F]);
+        }
+
+        if (traced < length) {
+            builder.append("...");
+        }
+
+        Log.d(TAG, builder.toString());
+    }
+}
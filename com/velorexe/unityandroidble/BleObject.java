@@ -1,5 +1,6 @@
 package com.velorexe.unityandroidble;
 
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -14,6 +15,36 @@ public class BleObject {
 
     public String base64Message;
 
+    public int deviceIndex = -1;
+    public int characteristicIndex = -1;
+
+    //Time the notification arrived in SystemClock.elapsedRealtimeNanos, and its number per Characteristic
+    public long timestamp = -1;
+    public int sequence = -1;
+
+    public int mtu = -1;
+    public int txPhy = -1;
+    public int rxPhy = -1;
+
+    //Reconnection attempt and the delay in milliseconds before it starts
+    public int attempt = -1;
+    public long delay = -1;
+
+    //Time in milliseconds an operation took from the Unity call until the device confirmed it
+    public double duration = -1;
+
+    //Every service, Characteristic and descriptor of a device in a single message
+    public JSONArray gattTable;
+    //Set when the GATT table comes from the GattCache and hasn't been verified by discovery yet,
+    //or when a read was answered from the CharacteristicValueCache, timestamp is then when the value arrived
+    public boolean fromCache = false;
+
+    //Characteristic notifications that have been collected by the NotificationBatcher
+    public JSONArray batch;
+
+    //AD structures of a scan result, as offset and length slices over the record in base64Message
+    public JSONObject advertisement;
+
     public boolean hasError = false;
     public String errorMessage;
 
@@ -39,6 +70,50 @@ public class BleObject {
 
             obj.put("base64Message", base64Message);
 
+            if (deviceIndex >= 0) {
+                obj.put("deviceIndex", deviceIndex);
+            }
+            if (characteristicIndex >= 0) {
+                obj.put("characteristicIndex", characteristicIndex);
+            }
+
+            if (timestamp >= 0) {
+                obj.put("timestamp", timestamp);
+            }
+            if (sequence >= 0) {
+                obj.put("sequence", sequence);
+            }
+
+            if (mtu >= 0) {
+                obj.put("mtu", mtu);
+            }
+            if (txPhy >= 0) {
+                obj.put("txPhy", txPhy);
+                obj.put("rxPhy", rxPhy);
+            }
+
+            if (attempt >= 0) {
+                obj.put("attempt", attempt);
+                obj.put("delay", delay);
+            }
+
+            if (duration >= 0) {
+                obj.put("duration", duration);
+            }
+
+            if (gattTable != null) {
+                obj.put("gattTable", gattTable);
+            }
+            if (fromCache) {
+                obj.put("fromCache", true);
+            }
+            if (batch != null) {
+                obj.put("batch", batch);
+            }
+            if (advertisement != null) {
+                obj.put("advertisement", advertisement);
+            }
+
             if(hasError) {
                 obj.put("hasError", hasError);
                 obj.put("errorMessage", errorMessage);
@@ -47,7 +122,7 @@ public class BleObject {
             return obj.toString();
         }
         catch(JSONException e){
-            e.printStackTrace();
+            BleLog.e("Couldn't encode " + command, e);
         }
 
         return obj.toString();
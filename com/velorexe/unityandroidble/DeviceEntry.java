@@ -0,0 +1,46 @@
+package com.velorexe.unityandroidble;
+
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+
+import com.velorexe.unityandroidble.connection.ConnectionService;
+
+/**
+ * Everything the library knows about a single device, kept in the {@link DeviceRegistry} under its MAC Address.
+ * The fields are volatile so the GATT callbacks, scan callbacks and Unity calls always see a consistent entry
+ */
+public class DeviceEntry {
+    public static final int STATE_DISCOVERED = 0;
+    public static final int STATE_CONNECTING = 1;
+    public static final int STATE_CONNECTED = 2;
+    public static final int STATE_DISCONNECTING = 3;
+
+    public final String address;
+    //Small index identifying this device inside binary bridge frames, it stays the same for an address
+    public final int index;
+
+    public volatile BluetoothDevice device;
+    public volatile BluetoothGatt gatt;
+    public volatile ConnectionService connection;
+
+    public volatile int state = STATE_DISCOVERED;
+
+    public DeviceEntry(BluetoothDevice device, int index) {
+        this(device.getAddress(), device, index);
+    }
+
+    /**
+     * @param address the device MAC Address
+     * @param device  the discovered device
+     * @param index   the index identifying the device inside binary bridge frames
+     */
+    public DeviceEntry(String address, BluetoothDevice device, int index) {
+        this.address = address;
+        this.index = index;
+        this.device = device;
+    }
+
+    public boolean isConnected() {
+        return connection != null;
+    }
+}
@@ -0,0 +1,89 @@
+package com.velorexe.unityandroidble;
+
+import android.bluetooth.BluetoothDevice;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Concurrent registry of every discovered device, keyed by MAC Address.
+ * Lookups are lock-free, so the write and notification hot paths never wait on scan results or Unity calls
+ */
+public class DeviceRegistry {
+    private final ConcurrentMap<String, DeviceEntry> mEntries = new ConcurrentHashMap<String, DeviceEntry>();
+
+    //Device indices outlive their entries, so Unity can keep its lookup tables between scans
+    private final ConcurrentMap<String, Integer> mIndices = new ConcurrentHashMap<String, Integer>();
+    private final AtomicInteger mNextIndex = new AtomicInteger();
+
+    /**
+     * Adds a device to the registry if it isn't in there yet
+     *
+     * @param device the discovered device
+     * @return true if the device wasn't in the registry yet
+     */
+    public boolean add(BluetoothDevice device) {
+        return add(device.getAddress(), device);
+    }
+
+    /**
+     * Adds a device to the registry under the given address if it isn't in there yet
+     *
+     * @param address the device MAC Address
+     * @param device  the discovered device
+     * @return true if the device wasn't in the registry yet
+     */
+    public boolean add(String address, BluetoothDevice device) {
+        if (mEntries.containsKey(address)) {
+            return false;
+        }
+
+        return mEntries.putIfAbsent(address, new DeviceEntry(address, device, getIndex(address))) == null;
+    }
+
+    /**
+     * Gets the entry of a device
+     *
+     * @param address the device MAC Address
+     * @return the entry, or null if the device hasn't been discovered
+     */
+    public DeviceEntry get(String address) {
+        return address == null ? null : mEntries.get(address);
+    }
+
+    public Collection<DeviceEntry> entries() {
+        return mEntries.values();
+    }
+
+    public int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * Forgets every device that isn't connected, connected devices keep their entry
+     */
+    public void removeDisconnected() {
+        for (DeviceEntry entry : mEntries.values()) {
+            if (!entry.isConnected()) {
+                mEntries.remove(entry.address, entry);
+            }
+        }
+    }
+
+    private int getIndex(String address) {
+        Integer index = mIndices.get(address);
+
+        if (index == null) {
+            Integer assigned = mNextIndex.getAndIncrement();
+            index = mIndices.putIfAbsent(address, assigned);
+
+            if (index == null) {
+                index = assigned;
+            }
+        }
+
+        return index;
+    }
+}
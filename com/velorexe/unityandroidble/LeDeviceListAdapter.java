@@ -2,26 +2,26 @@ package com.velorexe.unityandroidble;
 
 import android.bluetooth.BluetoothDevice;
 
-import java.util.HashMap;
-import java.util.Map;
-
+/**
+ * View of the discovered devices in the {@link DeviceRegistry}
+ */
 public class LeDeviceListAdapter {
-    public Map<String, BluetoothDevice> mLeDevicesMap = new HashMap<String, BluetoothDevice>();
+    private final DeviceRegistry mRegistry;
 
-    public boolean AddDevice(BluetoothDevice device) {
-        if (this.mLeDevicesMap.get(device.getAddress()) != null) {
-            return false;
-        }
+    public LeDeviceListAdapter(DeviceRegistry registry) {
+        mRegistry = registry;
+    }
 
-        this.mLeDevicesMap.put(device.getAddress(), device);
-        return true;
+    public boolean AddDevice(BluetoothDevice device) {
+        return mRegistry.add(device);
     }
 
     public int getCount() {
-        return this.mLeDevicesMap.size();
+        return mRegistry.size();
     }
 
     public BluetoothDevice getItem(String i) {
-        return this.mLeDevicesMap.get(i);
+        DeviceEntry entry = mRegistry.get(i);
+        return entry == null ? null : entry.device;
     }
 }
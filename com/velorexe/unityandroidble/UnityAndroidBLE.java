@@ -7,7 +7,6 @@ import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
 import android.bluetooth.BluetoothGatt;
 import android.bluetooth.BluetoothGattCharacteristic;
-import android.bluetooth.BluetoothGattDescriptor;
 import android.bluetooth.BluetoothGattService;
 import android.bluetooth.le.BluetoothLeScanner;
 import android.bluetooth.le.ScanCallback;
@@ -16,17 +15,49 @@ import android.content.Context;
 import android.content.pm.PackageManager;
 import android.os.Build;
 import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Base64;
-import android.util.Log;
 
 import androidx.annotation.RequiresApi;
 
 import com.unity3d.player.UnityPlayer;
+import com.velorexe.unityandroidble.bridge.BinaryBridge;
+import com.velorexe.unityandroidble.bridge.CharacteristicRing;
+import com.velorexe.unityandroidble.bridge.MessageDispatcher;
+import com.velorexe.unityandroidble.bridge.NotificationBatcher;
+import com.velorexe.unityandroidble.bridge.NotificationRouter;
+import com.velorexe.unityandroidble.connection.ConnectionProfile;
 import com.velorexe.unityandroidble.connection.ConnectionRunnable;
+import com.velorexe.unityandroidble.connection.BulkSubscription;
+import com.velorexe.unityandroidble.connection.CharacteristicValueCache;
+import com.velorexe.unityandroidble.connection.ConnectionManager;
 import com.velorexe.unityandroidble.connection.ConnectionService;
-
-import java.util.Arrays;
-import java.util.HashMap;
+import com.velorexe.unityandroidble.connection.GattCache;
+import com.velorexe.unityandroidble.connection.GattHandleTable;
+import com.velorexe.unityandroidble.connection.GattOperation;
+import com.velorexe.unityandroidble.connection.GattOperationQueue;
+import com.velorexe.unityandroidble.connection.GattWriteStream;
+import com.velorexe.unityandroidble.connection.ReadCharacteristicOperation;
+import com.velorexe.unityandroidble.connection.ReconnectPolicy;
+import com.velorexe.unityandroidble.connection.SetNotificationOperation;
+import com.velorexe.unityandroidble.connection.Subscription;
+import com.velorexe.unityandroidble.connection.WriteCharacteristicOperation;
+import com.velorexe.unityandroidble.metrics.CharacteristicMetrics;
+import com.velorexe.unityandroidble.metrics.MetricsRegistry;
+import com.velorexe.unityandroidble.scanning.AdvertisementRecord;
+import com.velorexe.unityandroidble.scanning.ScanAggregator;
+import com.velorexe.unityandroidble.scanning.ScanOptions;
+import com.velorexe.unityandroidble.transport.UnityPlayerSink;
+import com.velorexe.unityandroidble.transport.UnitySink;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -43,16 +74,74 @@ public class UnityAndroidBLE {
     //Command to send Unity Debug Logs
     private static final String mUnityLogCommand = "LogMessage";
 
+    //Where messages for Unity end up, replaced by load tests and benchmarks that run without Unity
+    private static volatile UnitySink mUnitySink = new UnityPlayerSink();
+
+    //Client Characteristic Configuration Descriptor that turns notifications on and off
+    public static final UUID CLIENT_CHARACTERISTIC_CONFIG = UUID.fromString("00002902-0000-1000-8000-00805f9b34fb");
+
     private static BluetoothAdapter mBluetoothAdapter = null;
     public static BluetoothLeScanner mBluetoothLeScanner = null;
 
-    public static LeDeviceListAdapter mLeDeviceListAdapter = null;
-    private static Map<BluetoothDevice, BluetoothGatt> mLeGattServers = null;
+    //Every discovered device with its Gatt Server and connection, safe to use from any thread
+    private static final DeviceRegistry mDeviceRegistry = new DeviceRegistry();
+    public static final LeDeviceListAdapter mLeDeviceListAdapter = new LeDeviceListAdapter(mDeviceRegistry);
+
+    //Queues connection requests and shares GATT operation slots between connections
+    private static final ConnectionManager mConnectionManager = new ConnectionManager();
+
+    //Link parameters requested on every new connection before discovering its services
+    private static ConnectionProfile mConnectionProfile = null;
+
+    //Reconnects lost connections instead of tearing them down when set
+    private static ReconnectPolicy mReconnectPolicy = null;
+
+    private static boolean mReportGattTable = false;
+
+    //Known GATT tables by MAC Address, reported before discovery finishes when enabled
+    private static volatile GattCache mGattCache = null;
+
+    private static long mOperationTimeout = GattOperation.DEFAULT_TIMEOUT;
+    private static int mWriteStreamWindow = GattWriteStream.DEFAULT_WINDOW;
+
+    //Age in milliseconds up to which reads are answered from the CharacteristicValueCache, 0 always reads from the device
+    private static volatile long mReadCacheMaxAge = 0;
+
+    //Worker thread that encodes messages and sends them to Unity, away from the binder threads
+    private static MessageDispatcher mDispatcher = null;
+
+    //Binary ring that notifications get written to instead of JSON messages when enabled
+    private static volatile BinaryBridge mBinaryBridge = null;
+
+    //Collects notifications into a single message per flush when batching is enabled
+    private static volatile NotificationBatcher mNotificationBatcher = null;
+
+    //Counters and latency histograms per device and Characteristic, null while metrics are disabled
+    private static volatile MetricsRegistry mMetrics = null;
+
+    //Records the finished GATT operations of every connection while metrics are enabled
+    private final GattOperationQueue.Listener mOperationListener = new GattOperationQueue.Listener() {
+        @Override
+        public void onOperation(String device, long queueNanos, long activeNanos, int status) {
+            MetricsRegistry metrics = mMetrics;
+
+            if (metrics != null) {
+                metrics.getDevice(device).onOperation(queueNanos, activeNanos, status);
+            }
+        }
+    };
 
-    private static Map<BluetoothDevice, ConnectionService> mConnectedServers = null;
+    //Filters and settings the next scan starts with
+    private static final ScanOptions mScanOptions = new ScanOptions();
+
+    //Smooths and throttles scan results into DevicesUpdated messages when enabled
+    private static volatile ScanAggregator mScanAggregator = null;
 
     public static boolean mScanning = false;
-    private Handler handler = new Handler();
+    private volatile boolean mReportAdvertisements = false;
+
+    //Scan timeouts run on the main thread, whichever thread created the singleton
+    private Handler handler = new Handler(Looper.getMainLooper());
 
     private static Context mContext;
 
@@ -73,10 +162,7 @@ public class UnityAndroidBLE {
 
             mBluetoothLeScanner = mBluetoothAdapter.getBluetoothLeScanner();
 
-            mLeDeviceListAdapter = new LeDeviceListAdapter();
-
-            mLeGattServers = new HashMap<BluetoothDevice, BluetoothGatt>();
-            mConnectedServers = new HashMap<BluetoothDevice, ConnectionService>();
+            mDeviceRegistry.removeDisconnected();
         }
 
         mContext = UnityPlayer.currentActivity.getApplicationContext();
@@ -99,6 +185,13 @@ public class UnityAndroidBLE {
         return mInstance;
     }
 
+    /**
+     * Gets the application Context connections are started with
+     */
+    public static Context getContext() {
+        return UnityPlayer.currentActivity.getApplicationContext();
+    }
+
     @RequiresApi(api = Build.VERSION_CODES.M)
     public static void checkPermissions(Context context, Activity activity) {
         if (context.checkSelfPermission(Manifest.permission.BLUETOOTH) != PackageManager.PERMISSION_GRANTED
@@ -112,11 +205,19 @@ public class UnityAndroidBLE {
 
     public static void deInitialize() {
         //Close all the connected Gatt Servers
-        for (Map.Entry<BluetoothDevice, BluetoothGatt> set : mLeGattServers.entrySet()) {
-            set.getValue().close();
-        }
+        for (DeviceEntry entry : mDeviceRegistry.entries()) {
+            BluetoothGatt gatt = entry.gatt;
+
+            if (gatt != null) {
+                gatt.close();
+            }
 
-        mLeGattServers = null;
+            entry.gatt = null;
+            entry.connection = null;
+            entry.state = DeviceEntry.STATE_DISCOVERED;
+
+            mConnectionManager.onDisconnected(entry.address);
+        }
     }
 
     /**
@@ -132,10 +233,9 @@ public class UnityAndroidBLE {
 
         mBluetoothLeScanner = mBluetoothAdapter.getBluetoothLeScanner();
 
-        mLeDeviceListAdapter = new LeDeviceListAdapter();
-
-        mLeGattServers = new HashMap<BluetoothDevice, BluetoothGatt>();
-        mConnectedServers = new HashMap<BluetoothDevice, ConnectionService>();
+        if (mDispatcher == null) {
+            mDispatcher = new MessageDispatcher(MessageDispatcher.DEFAULT_CAPACITY);
+        }
     }
 
     //region Scanning
@@ -151,6 +251,8 @@ public class UnityAndroidBLE {
                 @Override
                 public void run() {
                     mScanning = false;
+
+                    mBluetoothLeScanner.flushPendingScanResults(bleScanCallback);
                     mBluetoothLeScanner.stopScan(bleScanCallback);
 
                     sendToUnity(new BleObject("FinishedDiscovering"));
@@ -158,12 +260,14 @@ public class UnityAndroidBLE {
             }, scanPeriod);
 
             mScanning = true;
-            mBluetoothLeScanner.startScan(bleScanCallback);
+            mBluetoothLeScanner.startScan(mScanOptions.buildFilters(), mScanOptions.buildSettings(), bleScanCallback);
 
+            BleLog.d("Starting Scan");
             unityLog("Starting Scan");
 
             return;
         } else {
+            BleLog.w("BLE Manager is already scanning.");
             unityLog("BLE Manager is already scanning.");
         }
     }
@@ -178,285 +282,1266 @@ public class UnityAndroidBLE {
                 @Override
                 public void onScanResult(int callbackType, ScanResult result) {
                     super.onScanResult(callbackType, result);
-                    BluetoothDevice device = result.getDevice();
-                    if (mLeDeviceListAdapter.AddDevice(device)) {
-                        BleObject obj = new BleObject("DiscoveredDevice");
-                        obj.device = device.getAddress();
+                    handleScanResult(result);
+                }
+
+                @Override
+                public void onBatchScanResults(List<ScanResult> results) {
+                    super.onBatchScanResults(results);
+                    handleBatchScanResults(results);
+                }
+
+                @Override
+                public void onScanFailed(int errorCode) {
+                    super.onScanFailed(errorCode);
+                    mScanning = false;
+
+                    BleObject obj = new BleObject("FinishedDiscovering");
+                    obj.setError("Scan failed with error code " + errorCode);
+
+                    sendToUnity(obj);
+                }
+            };
+
+    /**
+     * Gets called with the results the controller collected during the report delay of the Batched scan profile.
+     * The whole batch is sent to Unity as a single DiscoveredDevices message, with the latest result per device
+     *
+     * @param results the results of the batch
+     */
+    private void handleBatchScanResults(List<ScanResult> results) {
+        final Map<String, ScanResult> latest = new LinkedHashMap<String, ScanResult>();
+        ScanAggregator aggregator = mScanAggregator;
 
-                        if (device.getName() != null) {
-                            obj.name = device.getName();
+        for (int i = 0; i < results.size(); i++) {
+            ScanResult result = results.get(i);
+
+            if (mScanOptions.matches(result)) {
+                //Devices are registered right away, so Unity can connect as soon as it receives the batch
+                mLeDeviceListAdapter.AddDevice(result.getDevice());
+                latest.put(result.getDevice().getAddress(), result);
+
+                if (aggregator != null) {
+                    aggregator.update(result);
+                }
+            }
+        }
+
+        if (latest.isEmpty()) {
+            return;
+        }
+
+        mDispatcher.dispatch(new Runnable() {
+            @Override
+            public void run() {
+                BleObject obj = new BleObject("DiscoveredDevices");
+                obj.batch = new JSONArray();
+
+                for (ScanResult result : latest.values()) {
+                    try {
+                        JSONObject device = new JSONObject();
+
+                        device.put("device", result.getDevice().getAddress());
+                        device.put("name", result.getDevice().getName());
+                        device.put("rssi", result.getRssi());
+
+                        byte[] record = result.getScanRecord() != null ? result.getScanRecord().getBytes() : null;
+                        if (record != null) {
+                            device.put("base64Message", Base64.encodeToString(record, Base64.NO_WRAP));
+                            device.put("advertisement", AdvertisementRecord.toJson(record, result.getRssi()));
                         }
 
-                        sendToUnity(obj);
+                        obj.batch.put(device);
+                    } catch (JSONException e) {
+                        BleLog.e("Couldn't encode the batched scan result of " + result.getDevice().getAddress(), e);
                     }
                 }
-            };
+
+                sendToUnity(obj);
+            }
+        });
+    }
+
+    private void handleScanResult(ScanResult result) {
+        if (!mScanOptions.matches(result)) {
+            return;
+        }
+
+        BluetoothDevice device = result.getDevice();
+
+        ScanAggregator aggregator = mScanAggregator;
+        if (aggregator != null) {
+            aggregator.update(result);
+        }
+
+        if (mLeDeviceListAdapter.AddDevice(device)) {
+            sendScanResult("DiscoveredDevice", result);
+        } else if (mReportAdvertisements) {
+            sendScanResult("AdvertisementReceived", result);
+        }
+    }
+
+    /**
+     * Sends a scan result to Unity with its raw advertisement record and the AD structures parsed out of it.
+     * The parsing and encoding happen on the dispatcher thread, off the scan callback
+     */
+    private void sendScanResult(final String command, final ScanResult result) {
+        mDispatcher.dispatch(new Runnable() {
+            @Override
+            public void run() {
+                BleObject obj = new BleObject(command);
+                BluetoothDevice device = result.getDevice();
+
+                obj.device = device.getAddress();
+
+                if (device.getName() != null) {
+                    obj.name = device.getName();
+                }
+
+                byte[] record = result.getScanRecord() != null ? result.getScanRecord().getBytes() : null;
+                if (record != null) {
+                    try {
+                        obj.base64Message = Base64.encodeToString(record, Base64.NO_WRAP);
+                        obj.advertisement = AdvertisementRecord.toJson(record, result.getRssi());
+                    } catch (JSONException e) {
+                        BleLog.e("Couldn't encode the advertisement of " + obj.device, e);
+                    }
+                }
+
+                sendToUnity(obj);
+            }
+        });
+    }
+
+    /**
+     * Reports every advertisement of an already discovered device as an AdvertisementReceived message,
+     * so beacon telemetry in manufacturer or service data can be read at advertising rate without connecting
+     *
+     * @param enabled true to report every advertisement, false to only report a device the first time it's seen
+     */
+    public void setAdvertisementReporting(boolean enabled) {
+        mReportAdvertisements = enabled;
+    }
 
     public void stopScanBleDevices() {
         if (mScanning) {
+            mBluetoothLeScanner.flushPendingScanResults(bleScanCallback);
             mBluetoothLeScanner.stopScan(bleScanCallback);
             mScanning = false;
         }
     }
-    //endregion
 
-    //region Connecting
+    /**
+     * Only reports devices that advertise the given service, offloaded to the Bluetooth controller.
+     * Filters apply from the next scan on, a device is reported if it matches any of the added filters
+     *
+     * @param service the 16-bit or full UUID of the service
+     */
+    public void addScanServiceFilter(String service) {
+        if (!mScanOptions.addServiceFilter(service)) {
+            BleLog.w("Invalid service UUID for scan filter: " + service);
+            unityLog("Invalid service UUID for scan filter: " + service);
+        }
+    }
 
     /**
-     * Connects to a Bluetooth device with the given UUID
+     * Only reports the device with the given MAC Address, offloaded to the Bluetooth controller
      *
-     * @param deviceUuid the UUID of the device that the BluetoothAdapter should connect to
+     * @param device the device MAC Address
      */
-    public void connectToDevice(final String deviceUuid) {
-        BluetoothDevice device = mLeDeviceListAdapter.getItem(deviceUuid);
-        BleObject obj = new BleObject("StartConnection");
+    public void addScanDeviceFilter(String device) {
+        if (!mScanOptions.addDeviceFilter(device)) {
+            BleLog.w("Invalid MAC Address for scan filter: " + device);
+            unityLog("Invalid MAC Address for scan filter: " + device);
+        }
+    }
 
-        if (device != null && !mConnectedServers.containsKey(device)) {
-            obj.device = device.getAddress();
+    /**
+     * Only reports devices whose manufacturer specific data matches, offloaded to the Bluetooth controller
+     *
+     * @param manufacturerId the company identifier of the manufacturer
+     * @param data           the data the manufacturer specific data has to start with, or null to match any
+     * @param mask           which bits of the data have to match, or null to match all of them
+     */
+    public void addScanManufacturerFilter(int manufacturerId, byte[] data, byte[] mask) {
+        if (!mScanOptions.addManufacturerFilter(manufacturerId, data, mask)) {
+            BleLog.w("Invalid manufacturer data for scan filter: " + manufacturerId);
+            unityLog("Invalid manufacturer data for scan filter: " + manufacturerId);
+        }
+    }
 
-            sendToUnity(obj);
+    /**
+     * Only reports devices whose manufacturer payload holds the given value at an offset.
+     * Checked in software against the raw advertisement record, on top of the hardware filters
+     *
+     * @param manufacturerId the company identifier of the manufacturer
+     * @param offset         the offset inside the payload, after the company identifier
+     * @param value          the bytes the payload has to contain at the offset
+     * @param mask           which bits of the value have to match, or null to match all of them
+     */
+    public void addScanManufacturerPayloadFilter(int manufacturerId, int offset, byte[] value, byte[] mask) {
+        mScanOptions.addManufacturerPayloadFilter(manufacturerId, offset, value, mask);
+    }
 
-            ConnectionService service = new ConnectionService(this);
-            device.connectGatt(UnityPlayer.currentActivity.getApplicationContext(), true, service.gattCallback);
+    /**
+     * Only reports devices whose name starts with the given prefix.
+     * Android can't offload this one, so it's checked for every result that passes the other filters
+     *
+     * @param prefix the name prefix, or null to report devices regardless of their name
+     */
+    public void setScanNamePrefix(String prefix) {
+        mScanOptions.setNamePrefix(prefix);
+    }
 
-            mConnectedServers.put(device, service);
-        } else {
-            obj.setError("BluetoothDevice hasn't been discovered yet");
-            sendToUnity(obj);
+    /**
+     * Sets the ScanSettings profile the next scan uses.
+     * With the Batched profile the controller holds on to results for the report delay,
+     * and Unity receives them as a single DiscoveredDevices message per batch
+     *
+     * @param profile     LowPower (default), Balanced, LowLatency, Opportunistic or Batched
+     * @param reportDelay the time in milliseconds the controller holds on to results with the Batched profile
+     */
+    public void setScanProfile(String profile, int reportDelay) {
+        if (!mScanOptions.setProfile(profile, reportDelay)) {
+            BleLog.w("Unknown scan profile: " + profile);
+            unityLog("Unknown scan profile: " + profile);
         }
     }
 
+    /**
+     * Removes every scan filter, the next scan reports every advertiser in range again
+     */
+    public void clearScanFilters() {
+        mScanOptions.clearFilters();
+    }
 
     /**
-     * Passes through to Unity that the device is connected to the Gatt Server
+     * Keeps a smoothed RSSI, last seen time and advertisement per device while scanning,
+     * and sends the devices that changed as a single DevicesUpdated message per report interval.
+     * Devices that haven't been seen within the stale timeout are reported as lost
      *
-     * @param gattServer the GattServer that the device is connected to
+     * @param reportInterval the time in milliseconds between two DevicesUpdated messages
+     * @param staleTimeout   the time in milliseconds after which an unseen device is lost, 0 to never age devices out
+     * @param rssiSmoothing  the weight between 0 and 1 of a new RSSI sample, lower values smooth more
+     * @param rssiThreshold  the change of the smoothed RSSI in dBm that's worth reporting
      */
-    public void connectedToGattServer(BluetoothGatt gattServer) {
-        if (!mLeGattServers.containsKey(gattServer.getDevice())) {
-            mLeGattServers.put(gattServer.getDevice(), gattServer);
-        }
+    public void enableScanAggregation(int reportInterval, int staleTimeout, float rssiSmoothing, int rssiThreshold) {
+        disableScanAggregation();
 
-        BleObject obj = new BleObject("ConnectedToGattServer");
-        obj.device = gattServer.getDevice().getAddress();
+        ScanAggregator aggregator = new ScanAggregator(reportInterval, staleTimeout, rssiSmoothing, rssiThreshold, mDispatcher.getLooper());
+        aggregator.start();
 
-        sendToUnity(obj);
+        mScanAggregator = aggregator;
     }
 
-    public void disconnectDevice(String deviceAddress) {
-        BluetoothDevice device = mLeDeviceListAdapter.getItem(deviceAddress);
-        BluetoothGatt gatt = mLeGattServers.get(device);
-
-        BleObject obj = new BleObject("DisconnectedFromGattServer");
-        obj.device = device.getAddress();
-
-        if (gatt != null) {
-            gatt.close();
-            gatt.disconnect();
+    public void disableScanAggregation() {
+        ScanAggregator aggregator = mScanAggregator;
+        mScanAggregator = null;
 
-            mConnectedServers.remove(mLeDeviceListAdapter.getItem(deviceAddress));
-            mLeGattServers.remove(device);
-        }
-        else {
-            obj.setError("Can't find connected device with address " + deviceAddress);
+        if (aggregator != null) {
+            aggregator.stop();
         }
-
-        sendToUnity(obj);
     }
+    //endregion
+
+    //region Connecting
 
     /**
-     * Passes through to Unity that the device is disconnected from the Gatt Server
+     * Connects to a Bluetooth device with the given UUID
      *
-     * @param gattServer the GattServer that the device lost connection to
+     * @param deviceUuid the UUID of the device that the BluetoothAdapter should connect to
      */
-    public void disconnectedFromGattServer(BluetoothGatt gattServer) {
-        disconnectDevice(gattServer.getDevice().getAddress());
+    public void connectToDevice(final String deviceUuid) {
+        connectToDevice(deviceUuid, true);
     }
-    //endregion
-
-    //region Discovering
 
     /**
-     * Passes the found Services and Characteristics to Unity from the given Gatt
+     * Queues a connection to a discovered device, it starts once the connection limits allow it.
+     * Unity receives ConnectionQueued if it has to wait, and StartConnection once the connect is started
      *
-     * @param gatt the Gatt device which the services have been found from
+     * @param deviceUuid  the device MAC Address
+     * @param autoConnect true to let Android connect in the background whenever the device is in range,
+     *                    false to connect directly, which is a lot faster but gives up after about 30 seconds
      */
-    public void discoveredService(BluetoothGatt gatt) {
-        List<BluetoothGattService> services = gatt.getServices();
-
-        for (int i = 0; i < services.size(); i++) {
-            BleObject obj = new BleObject("DiscoveredService");
+    public void connectToDevice(final String deviceUuid, boolean autoConnect) {
+        DeviceEntry entry = mDeviceRegistry.get(deviceUuid);
 
-            obj.device = gatt.getDevice().getAddress();
-            obj.service = services.get(i).getUuid().toString();
+        if (entry == null) {
+            BleObject obj = new BleObject("StartConnection");
 
+            obj.setError("BluetoothDevice hasn't been discovered yet");
             sendToUnity(obj);
+            return;
+        }
 
-            List<BluetoothGattCharacteristic> characteristics = services.get(i).getCharacteristics();
-            for (int j = 0; j < characteristics.size(); j++) {
-                obj.command = "DiscoveredCharacteristic";
-                obj.characteristic = characteristics.get(j).getUuid().toString();
+        synchronized (entry) {
+            if (entry.connection != null) {
+                BleObject obj = new BleObject("StartConnection");
+                obj.device = entry.address;
 
+                obj.setError("BluetoothDevice is already connected");
                 sendToUnity(obj);
+                return;
             }
-        }
 
-        BleObject obj = new BleObject("DeviceConnected");
-        obj.device = gatt.getDevice().getAddress();
+            ConnectionService service = new ConnectionService(this, entry.address, entry.index, mConnectionManager.scheduler, mOperationListener);
+            service.setConnectionProfile(mConnectionProfile);
+            service.setReconnectPolicy(mReconnectPolicy);
 
-        sendToUnity(obj);
-    }
-    //endregion
+            entry.connection = service;
+            entry.state = DeviceEntry.STATE_CONNECTING;
+        }
 
-    //region Reading
+        mConnectionManager.request(entry, autoConnect);
+    }
 
     /**
-     * Subscribes to a given Characteristic
+     * Sets how many direct connects may be in progress at once, further requests wait in line
      *
-     * @param device         the device MAC Address
-     * @param service        the UUID of the service under which the Characteristic is specified
-     * @param characteristic the UUID of the Characteristic to subscribe to
+     * @param maxConcurrentConnects the amount of connects, 2 by default
      */
-    public void subscribeToGattCharacteristic(String device, String service, String characteristic) {
-        BluetoothDevice bDevice = mLeDeviceListAdapter.getItem(device);
-        BluetoothGatt gattServer = mLeGattServers.get(bDevice);
-
-        UUID serviceUUID = UUID.fromString("0000" + service + "-0000-1000-8000-00805f9b34fb");
-        BluetoothGattService gattService = gattServer.getService(serviceUUID);
+    public void setMaxConcurrentConnects(int maxConcurrentConnects) {
+        mConnectionManager.setMaxConcurrentConnects(maxConcurrentConnects);
+    }
 
-        UUID gattUUID = UUID.fromString("0000" + characteristic + "-0000-1000-8000-00805f9b34fb");
-        BluetoothGattCharacteristic gattCharacteristic = gattService.getCharacteristic(gattUUID);
+    /**
+     * Sets how many devices may be connected or connecting at once, further requests wait in line
+     *
+     * @param maxConnections the amount of devices, 7 by default
+     */
+    public void setMaxConnections(int maxConnections) {
+        mConnectionManager.setMaxConnections(maxConnections);
+    }
 
-        UUID descriptorUUID = UUID.fromString("00002902-0000-1000-8000-00805f9b34fb");
-        BluetoothGattDescriptor gattDescriptor = gattCharacteristic.getDescriptor(descriptorUUID);
+    /**
+     * Sets how many GATT operations may be in flight across every connected device at once.
+     * Free slots go round-robin to the devices that are waiting for one, so every device gets its turn
+     *
+     * @param maxOperations the amount of operations, 0 to not limit them
+     */
+    public void setMaxGattOperations(int maxOperations) {
+        mConnectionManager.scheduler.setMaxSlots(maxOperations);
+    }
 
-        gattDescriptor.setValue(BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE);
+    /**
+     * Sets the link parameters that get requested on every new connection, in order, before its services are discovered.
+     * The negotiated values are reported back to Unity with the MtuChanged and PhyUpdated commands
+     *
+     * @param mtu                the MTU to request, 23 or lower keeps the default
+     * @param connectionPriority 0 for balanced, 1 for high, 2 for low power or -1 to keep the default
+     * @param phy                a mask of 1 for LE 1M, 2 for LE 2M and 4 for LE Coded, or 0 to keep the default
+     */
+    public void setConnectionProfile(int mtu, int connectionPriority, int phy) {
+        mConnectionProfile = new ConnectionProfile(mtu, connectionPriority, phy);
+    }
 
-        gattDescriptor.setValue(new byte[]{0x01, 0x00});
-        gattServer.writeDescriptor(gattDescriptor);
+    /**
+     * Removes the connection profile, new connections go straight to discovering their services again
+     */
+    public void clearConnectionProfile() {
+        mConnectionProfile = null;
+    }
 
-        BleObject obj = new BleObject("StartedSubscribingToCharacteristic");
+    /**
+     * Passes through to Unity that the device is connected to the Gatt Server
+     *
+     * @param gattServer the GattServer that the device is connected to
+     */
+    public void connectedToGattServer(BluetoothGatt gattServer) {
+        DeviceEntry entry = mDeviceRegistry.get(gattServer.getDevice().getAddress());
 
-        if (gattServer.setCharacteristicNotification(gattCharacteristic, true)) {
-            obj.device = device;
-            obj.service = service;
-            obj.characteristic = characteristic;
-        } else {
-            obj.setError("Couldn't connect to the specified characteristic " + characteristic);
+        if (entry != null) {
+            entry.gatt = gattServer;
+            entry.state = DeviceEntry.STATE_CONNECTED;
         }
 
-        sendToUnity(obj);
-    }
-
-    public void unsubscribeFromGattCharacteristic(String device, String service, String characteristic) {
-        BluetoothDevice bDevice = mLeDeviceListAdapter.getItem(device);
-        BluetoothGatt gattServer = mLeGattServers.get(bDevice);
+        mConnectionManager.onConnected(gattServer.getDevice().getAddress());
 
-        UUID serviceUUID = UUID.fromString("0000" + service + "-0000-1000-8000-00805f9b34fb");
-        BluetoothGattService gattService = gattServer.getService(serviceUUID);
+        BleObject obj = new BleObject("ConnectedToGattServer");
+        obj.device = gattServer.getDevice().getAddress();
 
-        UUID gattUUID = UUID.fromString("0000" + characteristic + "-0000-1000-8000-00805f9b34fb");
-        BluetoothGattCharacteristic gattCharacteristic = gattService.getCharacteristic(gattUUID);
+        sendToUnity(obj);
 
-        UUID descriptorUUID = UUID.fromString("00002902-0000-1000-8000-00805f9b34fb");
-        BluetoothGattDescriptor gattDescriptor = gattCharacteristic.getDescriptor(descriptorUUID);
+        reportCachedGattTable(entry);
+    }
 
-        gattDescriptor.setValue(BluetoothGattDescriptor.DISABLE_NOTIFICATION_VALUE);
+    /**
+     * Hands Unity the GATT table that was cached for the device, while its services are still being discovered
+     *
+     * @param entry the entry of the device that just connected
+     */
+    private static void reportCachedGattTable(DeviceEntry entry) {
+        GattCache cache = mGattCache;
+        String table = cache == null || entry == null ? null : cache.getTable(entry.address);
 
-        gattDescriptor.setValue(new byte[]{0x00, 0x00});
-        gattServer.writeDescriptor(gattDescriptor);
+        if (table == null) {
+            return;
+        }
 
-        BleObject obj = new BleObject("StartedUnsubscribingFromCharacteristic");
+        BleObject obj = new BleObject("DiscoveredGattTable");
 
-        if (gattServer.setCharacteristicNotification(gattCharacteristic, false)) {
-            obj.device = device;
-            obj.service = service;
-            obj.characteristic = characteristic;
+        obj.device = entry.address;
+        obj.deviceIndex = entry.index;
+        obj.fromCache = true;
 
-        } else {
-            obj.setError("Couldn't connect to the specified characteristic " + characteristic);
+        try {
+            obj.gattTable = new JSONArray(table);
+        } catch (JSONException e) {
+            //A table that can't be read anymore is dropped, discovery stores a new one
+            cache.remove(entry.address);
+            return;
         }
 
         sendToUnity(obj);
     }
 
-    public void subscribeToCustomGattCharacteristic(String device, String service, String characteristic) {
-        BluetoothDevice bDevice = mLeDeviceListAdapter.getItem(device);
-        BluetoothGatt gattServer = mLeGattServers.get(bDevice);
+    public void disconnectDevice(String deviceAddress) {
+        DeviceEntry entry = mDeviceRegistry.get(deviceAddress);
 
-        UUID serviceUUID = UUID.fromString(service);
-        BluetoothGattService gattService = gattServer.getService(serviceUUID);
+        BleObject obj = new BleObject("DisconnectedFromGattServer");
+        obj.device = deviceAddress;
 
-        UUID gattUUID = UUID.fromString(characteristic);
-        BluetoothGattCharacteristic gattCharacteristic = gattService.getCharacteristic(gattUUID);
+        BluetoothGatt gatt = null;
+        ConnectionService connection = null;
 
-        UUID descriptorUUID = UUID.fromString("00002902-0000-1000-8000-00805f9b34fb");
-        BluetoothGattDescriptor gattDescriptor = gattCharacteristic.getDescriptor(descriptorUUID);
+        if (entry != null) {
+            synchronized (entry) {
+                gatt = entry.gatt;
+                connection = entry.connection;
 
-        gattDescriptor.setValue(BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE);
+                entry.gatt = null;
+                entry.connection = null;
+                entry.state = DeviceEntry.STATE_DISCOVERED;
+            }
+        }
 
-        gattDescriptor.setValue(new byte[]{0x01, 0x00});
-        gattServer.writeDescriptor(gattDescriptor);
+        //Closing the Gatt Server skips the disconnect callback, so the queue gives its operation slot back here
+        if (connection != null) {
+            connection.close();
+            connection.operationQueue.clear();
+        }
 
-        BleObject obj = new BleObject("StartedSubscribingToCharacteristic");
+        mConnectionManager.onDisconnected(deviceAddress);
 
-        if (gattServer.setCharacteristicNotification(gattCharacteristic, true)) {
-            obj.device = device;
-            obj.service = service;
-            obj.characteristic = characteristic;
-        } else {
-            obj.setError("Couldn't connect to the specified characteristic " + characteristic);
+        if (gatt != null) {
+            gatt.close();
+            gatt.disconnect();
+        }
+        //The connection was still waiting in the ConnectionManager's queue
+        else if (connection != null) {
+            obj.deviceIndex = entry.index;
+        }
+        else {
+            obj.setError("Can't find connected device with address " + deviceAddress);
         }
 
         sendToUnity(obj);
     }
 
-    public void unsubscribeFromCustomGattCharacteristic(String device, String service, String characteristic) {
-        BluetoothDevice bDevice = mLeDeviceListAdapter.getItem(device);
-        BluetoothGatt gattServer = mLeGattServers.get(bDevice);
+    /**
+     * Reconnects devices whose connection is lost with a jittered exponential backoff, on the same Gatt Server.
+     * Unity receives ConnectionLost with the attempt and its delay, then the usual messages once it's back,
+     * after which every previous subscription is restored. Applies to connections started from now on
+     *
+     * @param initialDelay the delay in milliseconds before the first attempt
+     * @param maxDelay     the longest delay in milliseconds between two attempts
+     * @param maxAttempts  the amount of attempts before the device is disconnected, 0 to keep trying
+     */
+    public void enableAutoReconnect(int initialDelay, int maxDelay, int maxAttempts) {
+        mReconnectPolicy = new ReconnectPolicy(initialDelay, maxDelay, maxAttempts);
+    }
 
-        UUID serviceUUID = UUID.fromString(service);
-        BluetoothGattService gattService = gattServer.getService(serviceUUID);
+    /**
+     * Reconnects lost devices like enableAutoReconnect, with a custom time for every attempt to connect.
+     * A device that has gone away never fails an attempt by itself, so the timeout is what moves on to the next one
+     *
+     * @param initialDelay   the delay in milliseconds before the first attempt
+     * @param maxDelay       the longest delay in milliseconds between two attempts
+     * @param maxAttempts    the amount of attempts before the device is disconnected, 0 to keep trying
+     * @param attemptTimeout the time in milliseconds an attempt gets to connect
+     */
+    public void enableAutoReconnect(int initialDelay, int maxDelay, int maxAttempts, int attemptTimeout) {
+        mReconnectPolicy = new ReconnectPolicy(initialDelay, maxDelay, maxAttempts, attemptTimeout);
+    }
 
-        UUID gattUUID = UUID.fromString(characteristic);
-        BluetoothGattCharacteristic gattCharacteristic = gattService.getCharacteristic(gattUUID);
+    /**
+     * Tears connections started from now on down as soon as they're lost
+     */
+    public void disableAutoReconnect() {
+        mReconnectPolicy = null;
+    }
 
-        UUID descriptorUUID = UUID.fromString("00002902-0000-1000-8000-00805f9b34fb");
-        BluetoothGattDescriptor gattDescriptor = gattCharacteristic.getDescriptor(descriptorUUID);
+    /**
+     * Passes through to Unity that the connection was lost and a reconnection attempt has been scheduled
+     *
+     * @param gattServer the Gatt Server that lost its connection
+     * @param attempt    the attempt that has been scheduled, starting at 0
+     * @param delay      the delay in milliseconds before the attempt starts
+     */
+    public void connectionLost(BluetoothGatt gattServer, int attempt, long delay) {
+        DeviceEntry entry = mDeviceRegistry.get(gattServer.getDevice().getAddress());
 
-        gattDescriptor.setValue(BluetoothGattDescriptor.DISABLE_NOTIFICATION_VALUE);
+        if (entry != null) {
+            entry.state = DeviceEntry.STATE_CONNECTING;
+        }
 
-        gattDescriptor.setValue(new byte[]{0x01, 0x00});
-        gattServer.writeDescriptor(gattDescriptor);
+        MetricsRegistry metrics = mMetrics;
+        if (metrics != null) {
+            metrics.getDevice(gattServer.getDevice().getAddress()).onReconnect();
+        }
 
-        BleObject obj = new BleObject("StartedUnsubscribingFromCharacteristic");
+        BleObject obj = new BleObject("ConnectionLost");
+        obj.device = gattServer.getDevice().getAddress();
 
-        if (gattServer.setCharacteristicNotification(gattCharacteristic, false)) {
-            obj.device = device;
-            obj.service = service;
-            obj.characteristic = characteristic;
-        } else {
-            obj.setError("Couldn't connect to the specified characteristic " + characteristic);
-        }
+        obj.attempt = attempt;
+        obj.delay = delay;
 
         sendToUnity(obj);
     }
 
     /**
-     * Passes the new value from the Characteristic to Unity
+     * Passes through to Unity that the device is disconnected from the Gatt Server
      *
-     * @param gatt           the Gatt device from which the Characteristic value has changed
-     * @param characteristic the Characteristic from which the value has changed
+     * @param gattServer the GattServer that the device lost connection to
+     */
+    public void disconnectedFromGattServer(BluetoothGatt gattServer) {
+        disconnectDevice(gattServer.getDevice().getAddress());
+    }
+    //endregion
+
+    //region Discovering
+
+    /**
+     * Passes the found Services and Characteristics to Unity from the given Gatt
+     *
+     * @param gatt the Gatt device which the services have been found from
+     */
+    public void discoveredService(BluetoothGatt gatt) {
+        List<BluetoothGattService> services = gatt.getServices();
+
+        ConnectionService connectionService = getConnection(gatt.getDevice().getAddress());
+        if (connectionService != null) {
+            //Sequence numbers carry on over a rediscovery of the same table, so drops during a reconnection show up as a gap
+            if (!connectionService.handleTable.build(services)) {
+                connectionService.router.resetSequences(connectionService.handleTable.size());
+            }
+        }
+
+        boolean verified = connectionService != null && verifyCachedGattTable(gatt.getDevice().getAddress(), connectionService);
+
+        if (verified) {
+            BleObject obj = new BleObject("GattTableVerified");
+
+            obj.device = gatt.getDevice().getAddress();
+            obj.deviceIndex = connectionService.deviceIndex;
+
+            sendToUnity(obj);
+        } else if (mReportGattTable && connectionService != null) {
+            reportGattTable(gatt.getDevice().getAddress(), connectionService);
+        } else {
+            for (int i = 0; i < services.size(); i++) {
+                BleObject obj = new BleObject("DiscoveredService");
+
+                obj.device = gatt.getDevice().getAddress();
+                obj.service = services.get(i).getUuid().toString();
+
+                sendToUnity(obj);
+
+                List<BluetoothGattCharacteristic> characteristics = services.get(i).getCharacteristics();
+                for (int j = 0; j < characteristics.size(); j++) {
+                    //Messages are encoded on the dispatcher thread, so every one of them needs its own object
+                    BleObject characteristicObj = new BleObject("DiscoveredCharacteristic");
+
+                    characteristicObj.device = obj.device;
+                    characteristicObj.service = obj.service;
+                    characteristicObj.characteristic = characteristics.get(j).getUuid().toString();
+
+                    if (connectionService != null) {
+                        characteristicObj.deviceIndex = connectionService.deviceIndex;
+                        characteristicObj.characteristicIndex = connectionService.handleTable.getHandle(characteristics.get(j));
+                    }
+
+                    sendToUnity(characteristicObj);
+                }
+            }
+        }
+
+        BleObject obj = new BleObject("DeviceConnected");
+        obj.device = gatt.getDevice().getAddress();
+
+        sendToUnity(obj);
+
+        if (connectionService != null && connectionService.takeRestoring()) {
+            restoreSubscriptions(connectionService);
+        }
+
+        //Calls Unity made with the handles of the cached table only go through if the table turned out to be right
+        if (connectionService != null) {
+            connectionService.discovered(verified || mGattCache == null);
+        }
+    }
+
+    /**
+     * Subscribes to every Characteristic the connection was subscribed to before it was lost, as a single bulk subscribe.
+     * The CCCD writes are queued right away and go out once the operation queue is released after discovery
+     *
+     * @param connection the connection that has been restored
+     */
+    private void restoreSubscriptions(ConnectionService connection) {
+        List<Subscription> subscriptions = connection.getSubscriptions();
+
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+
+        int[] handles = new int[subscriptions.size()];
+        boolean[] indicate = new boolean[subscriptions.size()];
+        boolean[] changeOnly = new boolean[subscriptions.size()];
+
+        for (int i = 0; i < subscriptions.size(); i++) {
+            Subscription subscription = subscriptions.get(i);
+
+            handles[i] = connection.handleTable.getHandle(subscription.service.toString(), subscription.characteristic.toString());
+            indicate[i] = subscription.indicate;
+            changeOnly[i] = subscription.changeOnly;
+        }
+
+        setNotifications(connection, connection.getDeviceAddress(), null, null, handles, indicate, changeOnly, true);
+    }
+
+    /**
+     * Compares the discovered GATT table with the cached one, storing it when it's new or has changed.
+     * Queues a read of the Database Hash when the device has one, so a changed database is noticed as well
+     *
+     * @param device     the device MAC Address
+     * @param connection the connection whose handle table has just been built
+     * @return true if the cached table Unity already received is still correct
+     */
+    private static boolean verifyCachedGattTable(String device, ConnectionService connection) {
+        GattCache cache = mGattCache;
+
+        if (cache == null) {
+            return false;
+        }
+
+        String table;
+        try {
+            table = connection.handleTable.toJson().toString();
+        } catch (JSONException e) {
+            return false;
+        }
+
+        int hashHandle = connection.handleTable.getHandle(GattCache.GENERIC_ATTRIBUTE_SERVICE.toString(), GattCache.DATABASE_HASH_CHARACTERISTIC.toString());
+        if (hashHandle != GattHandleTable.INVALID_HANDLE) {
+            connection.readDatabaseHash(connection.handleTable.get(hashHandle));
+        }
+
+        if (table.equals(cache.getTable(device))) {
+            return true;
+        }
+
+        cache.putTable(device, table);
+        return false;
+    }
+
+    /**
+     * Gets called with the Database Hash of a device after its services have been discovered.
+     * A hash that differs from the cached one means attributes changed in a way the table doesn't show,
+     * so the freshly discovered table is reported again.
+     * A hash that couldn't be read can't confirm the cached table either, so the discovered table is reported as well
+     *
+     * @param gatt the Gatt Server the hash was read from
+     * @param hash the value of the Database Hash Characteristic, or null if it couldn't be read
+     */
+    public void databaseHashRead(BluetoothGatt gatt, byte[] hash) {
+        GattCache cache = mGattCache;
+        String address = gatt.getDevice().getAddress();
+
+        if (cache == null) {
+            return;
+        }
+
+        if (hash == null) {
+            cache.removeHash(address);
+
+            ConnectionService connection = getConnection(address);
+            if (connection != null) {
+                reportGattTable(address, connection);
+            }
+
+            return;
+        }
+
+        String encoded = Base64.encodeToString(hash, Base64.NO_WRAP);
+        String cached = cache.getHash(address);
+
+        cache.putHash(address, encoded);
+
+        ConnectionService connection = getConnection(address);
+        if (cached != null && !cached.equals(encoded) && connection != null) {
+            reportGattTable(address, connection);
+        }
+    }
+
+    /**
+     * Stores the GATT table of every device that connects in app-private storage.
+     * The next time the device connects, Unity receives the stored table as a DiscoveredGattTable message with fromCache set
+     * right after ConnectedToGattServer, and GattTableVerified once discovery confirmed it instead of the full report.
+     * Handle-based calls made with the cached handles are held until then, and fail if the table turned out to have changed
+     *
+     * @param enabled true to cache GATT tables
+     */
+    public void setGattCaching(boolean enabled) {
+        mGattCache = enabled ? new GattCache(getContext()) : null;
+    }
+
+    /**
+     * Forgets the cached GATT table of a device, for example after a firmware update
+     *
+     * @param device the device MAC Address
+     */
+    public void clearGattCache(String device) {
+        GattCache cache = mGattCache;
+
+        if (cache != null) {
+            cache.remove(device);
+        }
+    }
+
+    /**
+     * Sends the whole GATT table of a device to Unity as a single DiscoveredGattTable message
+     *
+     * @param device     the device MAC Address
+     * @param connection the connection whose handle table has been built
+     */
+    private static void reportGattTable(String device, ConnectionService connection) {
+        BleObject obj = new BleObject("DiscoveredGattTable");
+
+        obj.device = device;
+        obj.deviceIndex = connection.deviceIndex;
+
+        try {
+            obj.gattTable = connection.handleTable.toJson();
+        } catch (JSONException e) {
+            obj.setError("Couldn't serialize the GATT table: " + e.getMessage());
+        }
+
+        sendToUnity(obj);
+    }
+
+    /**
+     * Reports the discovered services of a device as a single DiscoveredGattTable message,
+     * instead of a DiscoveredService and DiscoveredCharacteristic message for each of them
+     *
+     * @param enabled true to send the GATT table as a single message
+     */
+    public void setGattTableReporting(boolean enabled) {
+        mReportGattTable = enabled;
+    }
+    //endregion
+
+    //region Reading
+
+    /**
+     * Subscribes to a given Characteristic
+     *
+     * @param device         the device MAC Address
+     * @param service        the UUID of the service under which the Characteristic is specified
+     * @param characteristic the UUID of the Characteristic to subscribe to
+     */
+    public void subscribeToGattCharacteristic(String device, String service, String characteristic) {
+        subscribeToGattCharacteristic(device, service, characteristic, false);
+    }
+
+    /**
+     * Subscribes to a given Characteristic with notifications or indications.
+     * Unity receives StartedSubscribingToCharacteristic right away, and SubscribedToCharacteristic with the time it took
+     * once the device has confirmed the CCCD write
+     *
+     * @param device         the device MAC Address
+     * @param service        the UUID of the service under which the Characteristic is specified
+     * @param characteristic the UUID of the Characteristic to subscribe to
+     * @param indicate       true to subscribe to indications, which the device has to get acknowledged, instead of notifications
+     */
+    public void subscribeToGattCharacteristic(String device, String service, String characteristic, boolean indicate) {
+        subscribeToGattCharacteristic(device, service, characteristic, indicate, false);
+    }
+
+    /**
+     * Subscribes to a given Characteristic, optionally only reporting notifications that change its value.
+     * Status and battery Characteristics tend to repeat the same value, change-only drops the repeats
+     * before they reach the binary bridge or Unity, the value cache still sees every one of them
+     *
+     * @param device         the device MAC Address
+     * @param service        the UUID of the service under which the Characteristic is specified
+     * @param characteristic the UUID of the Characteristic to subscribe to
+     * @param indicate       true to subscribe to indications instead of notifications
+     * @param changeOnly     true to drop notifications that are byte-identical to the previous value
+     */
+    public void subscribeToGattCharacteristic(String device, String service, String characteristic, boolean indicate, boolean changeOnly) {
+        ConnectionService connection = getConnection(device);
+        setNotification(connection, device, service, characteristic, getHandle(connection, service, characteristic), true, indicate, changeOnly);
+    }
+
+    public void unsubscribeFromGattCharacteristic(String device, String service, String characteristic) {
+        ConnectionService connection = getConnection(device);
+        setNotification(connection, device, service, characteristic, getHandle(connection, service, characteristic), false, false, false);
+    }
+
+    public void subscribeToCustomGattCharacteristic(String device, String service, String characteristic) {
+        ConnectionService connection = getConnection(device);
+        setNotification(connection, device, service, characteristic, getHandle(connection, service, characteristic), true, false, false);
+    }
+
+    public void unsubscribeFromCustomGattCharacteristic(String device, String service, String characteristic) {
+        ConnectionService connection = getConnection(device);
+        setNotification(connection, device, service, characteristic, getHandle(connection, service, characteristic), false, false, false);
+    }
+
+    /**
+     * Subscribes to the Characteristic behind a handle from the DiscoveredCharacteristic command
+     *
+     * @param device the device MAC Address
+     * @param handle the handle of the Characteristic to subscribe to
+     */
+    public void subscribeToCharacteristicHandle(String device, int handle) {
+        subscribeToCharacteristicHandle(device, handle, false);
+    }
+
+    /**
+     * Subscribes to the Characteristic behind a handle with notifications or indications
+     *
+     * @param device   the device MAC Address
+     * @param handle   the handle of the Characteristic to subscribe to
+     * @param indicate true to subscribe to indications instead of notifications
      */
-    public void characteristicValueChanged(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
-        byte[] data = characteristic.getValue();
-        BleObject obj = new BleObject("CharacteristicValueChanged");
+    public void subscribeToCharacteristicHandle(String device, int handle, boolean indicate) {
+        subscribeToCharacteristicHandle(device, handle, indicate, false);
+    }
+
+    /**
+     * Subscribes to the Characteristic behind a handle, optionally only reporting notifications that change its value
+     *
+     * @param device     the device MAC Address
+     * @param handle     the handle of the Characteristic to subscribe to
+     * @param indicate   true to subscribe to indications instead of notifications
+     * @param changeOnly true to drop notifications that are byte-identical to the previous value
+     */
+    public void subscribeToCharacteristicHandle(final String device, final int handle, final boolean indicate, final boolean changeOnly) {
+        ConnectionService connection = getConnection(device);
+
+        if (connection != null && connection.holdUntilDiscovered("StartedSubscribingToCharacteristic", new Runnable() {
+            @Override
+            public void run() {
+                subscribeToCharacteristicHandle(device, handle, indicate, changeOnly);
+            }
+        })) {
+            return;
+        }
+
+        setNotification(connection, device, null, null, handle, true, indicate, changeOnly);
+    }
+
+    public void unsubscribeFromCharacteristicHandle(final String device, final int handle) {
+        ConnectionService connection = getConnection(device);
+
+        if (connection != null && connection.holdUntilDiscovered("StartedUnsubscribingFromCharacteristic", new Runnable() {
+            @Override
+            public void run() {
+                unsubscribeFromCharacteristicHandle(device, handle);
+            }
+        })) {
+            return;
+        }
+
+        setNotification(connection, device, null, null, handle, false, false, false);
+    }
+
+    /**
+     * Subscribes to many Characteristics of a device at once.
+     * Every CCCD write is queued back to back on the connection, and Unity receives a single SubscribedToCharacteristics
+     * message with the status of every Characteristic once the last write has completed
+     *
+     * @param device          the device MAC Address
+     * @param services        the service UUID of every Characteristic
+     * @param characteristics the Characteristic UUIDs
+     * @param indicate        per Characteristic, true to subscribe to indications instead of notifications, or null for notifications only
+     */
+    public void subscribeToCharacteristics(String device, String[] services, String[] characteristics, boolean[] indicate) {
+        subscribeToCharacteristics(device, services, characteristics, indicate, null);
+    }
+
+    /**
+     * Subscribes to many Characteristics of a device at once, optionally only reporting notifications that change their value
+     *
+     * @param device          the device MAC Address
+     * @param services        the service UUID of every Characteristic
+     * @param characteristics the Characteristic UUIDs
+     * @param indicate        per Characteristic, true to subscribe to indications instead of notifications, or null for notifications only
+     * @param changeOnly      per Characteristic, true to drop notifications that repeat the previous value, or null to report all of them
+     */
+    public void subscribeToCharacteristics(String device, String[] services, String[] characteristics, boolean[] indicate, boolean[] changeOnly) {
+        if (!checkBulkLengths("SubscribedToCharacteristics", device, characteristics == null ? -1 : characteristics.length,
+                services == null ? -1 : services.length, indicate, changeOnly)) {
+            return;
+        }
+
+        ConnectionService connection = getConnection(device);
+        int[] handles = new int[characteristics.length];
+
+        for (int i = 0; i < characteristics.length; i++) {
+            handles[i] = getHandle(connection, services[i], characteristics[i]);
+        }
+
+        setNotifications(connection, device, services, characteristics, handles, indicate, changeOnly, true);
+    }
+
+    /**
+     * Unsubscribes from many Characteristics of a device at once, reported as a single UnsubscribedFromCharacteristics message
+     *
+     * @param device          the device MAC Address
+     * @param services        the service UUID of every Characteristic
+     * @param characteristics the Characteristic UUIDs
+     */
+    public void unsubscribeFromCharacteristics(String device, String[] services, String[] characteristics) {
+        if (!checkBulkLengths("UnsubscribedFromCharacteristics", device, characteristics == null ? -1 : characteristics.length,
+                services == null ? -1 : services.length, null, null)) {
+            return;
+        }
+
+        ConnectionService connection = getConnection(device);
+        int[] handles = new int[characteristics.length];
+
+        for (int i = 0; i < characteristics.length; i++) {
+            handles[i] = getHandle(connection, services[i], characteristics[i]);
+        }
+
+        setNotifications(connection, device, services, characteristics, handles, null, null, false);
+    }
+
+    /**
+     * Subscribes to the Characteristics behind many handles at once, reported as a single SubscribedToCharacteristics message
+     *
+     * @param device   the device MAC Address
+     * @param handles  the handles of the Characteristics
+     * @param indicate per handle, true to subscribe to indications instead of notifications, or null for notifications only
+     */
+    public void subscribeToCharacteristicHandles(String device, int[] handles, boolean[] indicate) {
+        subscribeToCharacteristicHandles(device, handles, indicate, null);
+    }
+
+    /**
+     * Subscribes to the Characteristics behind many handles at once, optionally only reporting notifications that change their value
+     *
+     * @param device     the device MAC Address
+     * @param handles    the handles of the Characteristics
+     * @param indicate   per handle, true to subscribe to indications instead of notifications, or null for notifications only
+     * @param changeOnly per handle, true to drop notifications that repeat the previous value, or null to report all of them
+     */
+    public void subscribeToCharacteristicHandles(final String device, final int[] handles, final boolean[] indicate, final boolean[] changeOnly) {
+        int count = handles == null ? -1 : handles.length;
+
+        if (!checkBulkLengths("SubscribedToCharacteristics", device, count, count, indicate, changeOnly)) {
+            return;
+        }
+
+        ConnectionService connection = getConnection(device);
+
+        if (connection != null && connection.holdUntilDiscovered("SubscribedToCharacteristics", new Runnable() {
+            @Override
+            public void run() {
+                subscribeToCharacteristicHandles(device, handles, indicate, changeOnly);
+            }
+        })) {
+            return;
+        }
+
+        setNotifications(connection, device, null, null, handles, indicate, changeOnly, true);
+    }
+
+    public void unsubscribeFromCharacteristicHandles(final String device, final int[] handles) {
+        int count = handles == null ? -1 : handles.length;
+
+        if (!checkBulkLengths("UnsubscribedFromCharacteristics", device, count, count, null, null)) {
+            return;
+        }
+
+        ConnectionService connection = getConnection(device);
+
+        if (connection != null && connection.holdUntilDiscovered("UnsubscribedFromCharacteristics", new Runnable() {
+            @Override
+            public void run() {
+                unsubscribeFromCharacteristicHandles(device, handles);
+            }
+        })) {
+            return;
+        }
+
+        setNotifications(connection, device, null, null, handles, null, null, false);
+    }
+
+    /**
+     * Checks that every per-Characteristic array of a bulk request has an entry for every Characteristic,
+     * a request that doesn't is reported to Unity as a failed request instead of being partially applied
+     *
+     * @param command      the command of the message that reports the request
+     * @param device       the device MAC Address
+     * @param count        the amount of Characteristics, -1 if they're missing
+     * @param serviceCount the amount of services, -1 if they're missing
+     * @param indicate     the indicate flags, or null if they weren't given
+     * @param changeOnly   the change-only flags, or null if they weren't given
+     * @return true if the request can go ahead
+     */
+    private static boolean checkBulkLengths(String command, String device, int count, int serviceCount, boolean[] indicate, boolean[] changeOnly) {
+        String error = null;
+
+        if (count < 0 || serviceCount < 0) {
+            error = "No characteristics were specified";
+        } else if (serviceCount != count) {
+            error = "Got " + serviceCount + " services for " + count + " characteristics";
+        } else if (indicate != null && indicate.length != count) {
+            error = "Got " + indicate.length + " indicate flags for " + count + " characteristics";
+        } else if (changeOnly != null && changeOnly.length != count) {
+            error = "Got " + changeOnly.length + " change-only flags for " + count + " characteristics";
+        }
+
+        if (error == null) {
+            return true;
+        }
+
+        BleObject obj = new BleObject(command);
+
+        obj.device = device;
+        obj.setError(error);
+
+        sendToUnity(obj);
+        return false;
+    }
+
+    /**
+     * Turns notifications or indications of many Characteristics on or off through a single BulkSubscription
+     *
+     * @param connection      the connection of the device, or null if it isn't connected
+     * @param device          the device MAC Address
+     * @param services        the service UUIDs as Unity passed them, or null to report the full UUIDs
+     * @param characteristics the Characteristic UUIDs as Unity passed them, or null to report the full UUIDs
+     * @param handles         the handles of the Characteristics
+     * @param indicate        per Characteristic, true for indications, or null for notifications only
+     * @param changeOnly      per Characteristic, true to drop repeated values, or null to report all of them
+     * @param enable          true to subscribe, false to unsubscribe
+     */
+    private void setNotifications(ConnectionService connection, String device, String[] services, String[] characteristics,
+                                  int[] handles, boolean[] indicate, boolean[] changeOnly, boolean enable) {
+        BulkSubscription bulk = new BulkSubscription(enable ? "SubscribedToCharacteristics" : "UnsubscribedFromCharacteristics",
+                device, connection == null ? -1 : connection.deviceIndex, handles.length);
+
+        if (handles.length == 0) {
+            bulk.reportEmpty();
+            return;
+        }
+
+        for (int i = 0; i < handles.length; i++) {
+            boolean indication = enable && indicate != null && indicate[i];
+            BluetoothGattCharacteristic gattCharacteristic = connection == null ? null : connection.handleTable.get(handles[i]);
+
+            String service = services != null ? services[i] : gattCharacteristic != null ? gattCharacteristic.getService().getUuid().toString() : null;
+            String characteristic = characteristics != null ? characteristics[i] : gattCharacteristic != null ? gattCharacteristic.getUuid().toString() : null;
+
+            bulk.describe(i, service, characteristic, handles[i], indication);
+
+            if (gattCharacteristic == null) {
+                bulk.complete(i, GattOperation.STATUS_FAILED_TO_START, "Couldn't find the specified characteristic " + (characteristic != null ? characteristic : handles[i]));
+                continue;
+            }
+
+            if (gattCharacteristic.getDescriptor(CLIENT_CHARACTERISTIC_CONFIG) == null) {
+                bulk.complete(i, GattOperation.STATUS_FAILED_TO_START, "Characteristic " + characteristic + " doesn't support notifications");
+                continue;
+            }
+
+            indication = enable && usesIndications(gattCharacteristic, indication);
+            bulk.describe(i, service, characteristic, handles[i], indication);
+
+            enqueueOperation(connection, bulk.createOperation(i, gattCharacteristic, handles[i], enable, indication, enable ? connection : null));
+
+            if (enable) {
+                connection.addSubscription(gattCharacteristic, indication, changeOnly != null && changeOnly[i]);
+            } else {
+                connection.removeSubscription(gattCharacteristic);
+            }
+        }
+    }
+
+    /**
+     * Turns notifications or indications of a Characteristic on or off and queues the matching CCCD write.
+     * The write reports SubscribedToCharacteristic or UnsubscribedFromCharacteristic once the device has confirmed it
+     *
+     * @param connection     the connection of the device, or null if it isn't connected
+     * @param device         the device MAC Address
+     * @param service        the service UUID as Unity passed it, or null to report the full UUID
+     * @param characteristic the Characteristic UUID as Unity passed it, or null to report the full UUID
+     * @param handle         the handle of the Characteristic
+     * @param enable         true to subscribe, false to unsubscribe
+     * @param indicate       true to subscribe to indications instead of notifications
+     * @param changeOnly     true to drop notifications that repeat the previous value
+     */
+    private void setNotification(final ConnectionService connection, String device, String service, String characteristic, int handle,
+                                 final boolean enable, boolean indicate, boolean changeOnly) {
+        BleObject obj = new BleObject(enable ? "StartedSubscribingToCharacteristic" : "StartedUnsubscribingFromCharacteristic");
+        obj.device = device;
+
+        final BluetoothGattCharacteristic gattCharacteristic = connection == null ? null : connection.handleTable.get(handle);
+
+        if (gattCharacteristic == null) {
+            obj.setError("Couldn't find the specified characteristic " + (characteristic != null ? characteristic : handle));
+            sendToUnity(obj);
+            return;
+        }
+
+        obj.service = service != null ? service : gattCharacteristic.getService().getUuid().toString();
+        obj.characteristic = characteristic != null ? characteristic : gattCharacteristic.getUuid().toString();
+        obj.characteristicIndex = handle;
+
+        if (gattCharacteristic.getDescriptor(CLIENT_CHARACTERISTIC_CONFIG) == null) {
+            obj.setError("Characteristic " + obj.characteristic + " doesn't support notifications");
+        } else {
+            final boolean indication = enable && usesIndications(gattCharacteristic, indicate);
+
+            final BleObject completed = new BleObject(enable ? "SubscribedToCharacteristic" : "UnsubscribedFromCharacteristic");
+            completed.device = device;
+            completed.service = obj.service;
+            completed.characteristic = obj.characteristic;
+            completed.characteristicIndex = handle;
+
+            final long started = SystemClock.elapsedRealtimeNanos();
+
+            enqueueOperation(connection, new SetNotificationOperation(completed.command, handle, gattCharacteristic.getService().getUuid().toString(),
+                    gattCharacteristic.getUuid().toString(), enable, indication) {
+                @Override
+                public void onComplete(String device, int status) {
+                    completed.duration = (SystemClock.elapsedRealtimeNanos() - started) / 1000000.0;
+
+                    if (status != BluetoothGatt.GATT_SUCCESS) {
+                        completed.setError(describeStatus(status));
+
+                        //A subscription the device rejected shouldn't be restored after a reconnection,
+                        //one that timed out or was cut off by a lost connection should
+                        if (enable && isRejected(status)) {
+                            connection.removeSubscription(gattCharacteristic);
+                        }
+                    }
+
+                    sendToUnity(completed);
+                }
+            });
+
+            if (enable) {
+                connection.addSubscription(gattCharacteristic, indication, changeOnly);
+            } else {
+                connection.removeSubscription(gattCharacteristic);
+            }
+        }
+
+        sendToUnity(obj);
+    }
+
+    /**
+     * Checks whether a subscription has to use indications.
+     * Characteristics that only support indications use them even if notifications were asked for
+     */
+    private static boolean usesIndications(BluetoothGattCharacteristic characteristic, boolean indicate) {
+        int properties = characteristic.getProperties();
+
+        if ((properties & BluetoothGattCharacteristic.PROPERTY_NOTIFY) == 0) {
+            return (properties & BluetoothGattCharacteristic.PROPERTY_INDICATE) != 0 || indicate;
+        }
+
+        return indicate && (properties & BluetoothGattCharacteristic.PROPERTY_INDICATE) != 0;
+    }
+
+    /**
+     * Passes the new value from the Characteristic to Unity.
+     * Gets called on the binder thread, so the value is only captured here and encoded on the dispatcher thread
+     *
+     * @param service   the connection of the device the notification came from
+     * @param handle    the handle of the Characteristic from which the value has changed
+     * @param timestamp SystemClock.elapsedRealtimeNanos of the notification arriving
+     * @param data      the new value of the Characteristic
+     */
+    public void characteristicValueChanged(ConnectionService service, int handle, long timestamp, byte[] data) {
+        String device = service.getDeviceAddress();
+
+        //The table holds every discovered Characteristic, one outside it arrived before discovery and can't be told apart
+        if (handle == GattHandleTable.INVALID_HANDLE) {
+            if (BleLog.isLoggable(BleLog.VERBOSE)) {
+                BleLog.v("Dropped a notification of " + device + " from a Characteristic outside its GATT table");
+            }
+
+            return;
+        }
+
+        MetricsRegistry registry = mMetrics;
+        CharacteristicMetrics metrics = registry == null ? null : registry.getCharacteristic(device, handle);
+
+        int routed = service.router.route(handle, timestamp, data, mBinaryBridge, metrics);
+
+        if (routed == NotificationRouter.DROPPED && BleLog.isLoggable(BleLog.VERBOSE)) {
+            BleLog.v("Dropped a notification of " + device + " handle " + handle + ", Unity isn't keeping up");
+        }
+
+        if (metrics != null && (routed == NotificationRouter.ROUTED_TO_RING || routed == NotificationRouter.ROUTED_TO_BRIDGE)) {
+            metrics.onDispatched(SystemClock.elapsedRealtimeNanos() - timestamp);
+        }
+    }
+
+    /**
+     * Sends a Characteristic notification to Unity as a message through the dispatcher
+     *
+     * @param device         the device MAC Address
+     * @param characteristic the Characteristic the notification came from
+     * @param deviceIndex    the index of the device, or -1 if it isn't connected anymore
+     * @param handle         the handle of the Characteristic
+     * @param sequence       the sequence number of the notification
+     * @param timestamp      SystemClock.elapsedRealtimeNanos of the notification arriving
+     * @param data           the value of the notification
+     * @param metrics        the metrics of the Characteristic to record the delivery in, or null
+     * @return false if the dispatcher dropped the notification
+     */
+    public boolean dispatchCharacteristicValue(final String device, final BluetoothGattCharacteristic characteristic, final int deviceIndex,
+                                               final int handle, final int sequence, final long timestamp, final byte[] data,
+                                               final CharacteristicMetrics metrics) {
+        if (characteristic == null) {
+            return false;
+        }
+
+        return mDispatcher.dispatch(new Runnable() {
+            @Override
+            public void run() {
+                BleObject obj = new BleObject("CharacteristicValueChanged");
+
+                obj.timestamp = timestamp;
+                obj.sequence = sequence;
+
+                if (handle != GattHandleTable.INVALID_HANDLE) {
+                    obj.deviceIndex = deviceIndex;
+                    obj.characteristicIndex = handle;
+                }
+
+                sendCharacteristicValue(obj, device, characteristic, data);
 
-        obj.device = gatt.getDevice().getAddress();
+                if (metrics != null) {
+                    metrics.onDispatched(SystemClock.elapsedRealtimeNanos() - timestamp);
+                }
+            }
+        });
+    }
+
+    private void sendCharacteristicValue(BleObject obj, String device, BluetoothGattCharacteristic characteristic, byte[] data) {
+        obj.device = device;
         obj.service = characteristic.getService().getUuid().toString();
         obj.characteristic = characteristic.getUuid().toString();
 
-        androidLog(Arrays.toString(data));
+        BleLog.tracePayload(obj.command, obj.device, obj.characteristic, data);
 
         obj.base64Message = Base64.encodeToString(data, 0);
 
@@ -464,78 +1549,503 @@ public class UnityAndroidBLE {
     }
 
     public void readFromCharacteristic(String device, String service, String characteristic) {
-        BluetoothDevice bDevice = mLeDeviceListAdapter.getItem(device);
-        BluetoothGatt gattServer = mLeGattServers.get(bDevice);
-
-        UUID serviceUUID = UUID.fromString("0000" + service + "-0000-1000-8000-00805f9b34fb");
-        BluetoothGattService gattService = gattServer.getService(serviceUUID);
-
-        UUID gattUUID = UUID.fromString("0000" + characteristic + "-0000-1000-8000-00805f9b34fb");
-        BluetoothGattCharacteristic gattCharacteristic = gattService.getCharacteristic(gattUUID);
+        readFromCharacteristic(device, service, characteristic, mReadCacheMaxAge);
+    }
 
-        gattServer.readCharacteristic(gattCharacteristic);
+    /**
+     * Reads a Characteristic, answering from the last value that was read or notified if it's recent enough.
+     * A cached answer is the same ReadFromCharacteristic message with fromCache set and the timestamp of the value
+     *
+     * @param device         the device MAC Address
+     * @param service        the UUID of the service under which the Characteristic is specified
+     * @param characteristic the UUID of the Characteristic to read from
+     * @param maxAge         the oldest cached value in milliseconds that's accepted, 0 to always read from the device
+     */
+    public void readFromCharacteristic(String device, String service, String characteristic, long maxAge) {
+        ConnectionService connection = getConnection(device);
+        read(connection, device, characteristic, getHandle(connection, service, characteristic), maxAge);
     }
 
     @SuppressLint("MissingPermission")
     public void readFromCustomCharacteristic(String device, String service, String characteristic) {
-        BluetoothDevice bDevice = mLeDeviceListAdapter.getItem(device);
-        BluetoothGatt gattServer = mLeGattServers.get(bDevice);
+        ConnectionService connection = getConnection(device);
+        read(connection, device, characteristic, getHandle(connection, service, characteristic), mReadCacheMaxAge);
+    }
+
+    /**
+     * Reads the Characteristic behind a handle from the DiscoveredCharacteristic command
+     *
+     * @param device the device MAC Address
+     * @param handle the handle of the Characteristic to read from
+     */
+    public void readFromCharacteristicHandle(String device, int handle) {
+        readFromCharacteristicHandle(device, handle, mReadCacheMaxAge);
+    }
+
+    /**
+     * Reads the Characteristic behind a handle, answering from the cache if its value is recent enough
+     *
+     * @param device the device MAC Address
+     * @param handle the handle of the Characteristic to read from
+     * @param maxAge the oldest cached value in milliseconds that's accepted, 0 to always read from the device
+     */
+    public void readFromCharacteristicHandle(final String device, final int handle, final long maxAge) {
+        ConnectionService connection = getConnection(device);
+
+        if (connection != null && connection.holdUntilDiscovered("ReadFromCharacteristic", new Runnable() {
+            @Override
+            public void run() {
+                readFromCharacteristicHandle(device, handle, maxAge);
+            }
+        })) {
+            return;
+        }
+
+        read(connection, device, null, handle, maxAge);
+    }
+
+    /**
+     * Sets up to which age reads without an explicit maxAge are answered from the cache
+     *
+     * @param maxAge the age in milliseconds, 0 to always read from the device
+     */
+    public void setReadCacheMaxAge(long maxAge) {
+        mReadCacheMaxAge = Math.max(maxAge, 0);
+    }
+
+    private void read(ConnectionService connection, String device, String characteristic, int handle, long maxAge) {
+        BluetoothGattCharacteristic gattCharacteristic = connection == null ? null : connection.handleTable.get(handle);
+
+        if (gattCharacteristic == null) {
+            reportMissingCharacteristic("ReadFromCharacteristic", device, characteristic, handle);
+            return;
+        }
+
+        //A queued write or read has to finish first, or the answer could come from before it
+        if (maxAge > 0 && !connection.operationQueue.hasOperation(handle)) {
+            CharacteristicValueCache.CachedValue cached = connection.valueCache.getFresh(handle, maxAge * 1000000L, SystemClock.elapsedRealtimeNanos());
+
+            if (cached != null) {
+                sendCharacteristicRead(device, gattCharacteristic, cached.value, cached.updatedAt);
+                return;
+            }
+        }
+
+        enqueueOperation(connection, new ReadCharacteristicOperation(handle, gattCharacteristic.getService().getUuid().toString(),
+                gattCharacteristic.getUuid().toString()));
+    }
+
+    /**
+     * Sends the value of a read Characteristic to Unity, encoded on the dispatcher thread
+     * so the next callback isn't held up by it
+     *
+     * @param device         the device MAC Address
+     * @param characteristic the Characteristic that was read
+     * @param data           the value of the Characteristic
+     * @param cachedAt       SystemClock.elapsedRealtimeNanos of the cached value, or -1 if it was just read from the device
+     */
+    public static void sendCharacteristicRead(final String device, final BluetoothGattCharacteristic characteristic, final byte[] data, final long cachedAt) {
+        mDispatcher.dispatch(new Runnable() {
+            @Override
+            public void run() {
+                BleObject obj = new BleObject("ReadFromCharacteristic");
+
+                obj.device = device;
+                obj.service = characteristic.getService().getUuid().toString();
+                obj.characteristic = characteristic.getUuid().toString();
+
+                if (cachedAt >= 0) {
+                    obj.fromCache = true;
+                    obj.timestamp = cachedAt;
+                }
+
+                obj.base64Message = Base64.encodeToString(data, 0);
+
+                sendToUnity(obj);
+            }
+        });
+    }
+    //endregion
+
+    //region Operations
+
+    /**
+     * Gets the connection of a device by its MAC Address
+     *
+     * @param device the device MAC Address
+     * @return the connection, or null if the device isn't connected
+     */
+    private static ConnectionService getConnection(String device) {
+        DeviceEntry entry = mDeviceRegistry.get(device);
+        return entry == null ? null : entry.connection;
+    }
+
+    /**
+     * Resolves a service and Characteristic UUID through the handle table of the connection
+     *
+     * @return the handle of the Characteristic, or GattHandleTable.INVALID_HANDLE if it can't be found
+     */
+    private static int getHandle(ConnectionService connection, String service, String characteristic) {
+        return connection == null ? GattHandleTable.INVALID_HANDLE : connection.handleTable.getHandle(service, characteristic);
+    }
+
+    private static void reportMissingCharacteristic(String command, String device, String characteristic, int handle) {
+        BleObject obj = new BleObject(command);
+
+        obj.device = device;
+        obj.characteristic = characteristic;
+        obj.setError("Couldn't find the specified characteristic " + (characteristic != null ? characteristic : handle));
+
+        sendToUnity(obj);
+    }
+
+    /**
+     * Queues a GATT operation on the connection of the given device,
+     * so it only starts once the previous operation on that connection has completed
+     *
+     * @param connection the connection the operation is meant for
+     * @param operation  the operation to execute
+     */
+    private void enqueueOperation(ConnectionService connection, GattOperation operation) {
+        operation.timeout = mOperationTimeout;
+        connection.operationQueue.enqueue(operation);
+    }
+
+    /**
+     * Sets how long a queued GATT operation may take before it's failed and the next one is started
+     *
+     * @param timeout the timeout in milliseconds
+     */
+    public void setGattOperationTimeout(int timeout) {
+        mOperationTimeout = timeout;
+    }
+    //endregion
+
+    //region Binary Bridge
+
+    /**
+     * Routes all Characteristic notifications through a preallocated binary ring instead of JSON messages.
+     * Unity gets the direct address of the returned buffer through JNI and drains it by polling
+     * {@link #getBinaryBridgeWritePosition()}, see {@link BinaryBridge} for the frame layout
+     *
+     * @param capacity the size of the ring in bytes, rounded up to the next power of two
+     * @return the direct ByteBuffer backing the ring
+     */
+    public ByteBuffer enableBinaryBridge(int capacity) {
+        BinaryBridge bridge = mBinaryBridge;
+
+        if (bridge == null || bridge.getCapacity() < capacity) {
+            bridge = new BinaryBridge(capacity);
+            mBinaryBridge = bridge;
+        }
+
+        return bridge.getBuffer();
+    }
+
+    /**
+     * Stops writing notifications to the binary ring, they're send as JSON messages again afterwards
+     */
+    public void disableBinaryBridge() {
+        mBinaryBridge = null;
+    }
+
+    /**
+     * Gets the absolute position up to which complete frames have been written
+     *
+     * @return the write position, or -1 if the binary bridge isn't enabled
+     */
+    public long getBinaryBridgeWritePosition() {
+        BinaryBridge bridge = mBinaryBridge;
+        return bridge == null ? -1 : bridge.getWritePosition();
+    }
+
+    /**
+     * Tells the binary ring that Unity has read everything up to the given position
+     *
+     * @param position the absolute position Unity has drained the ring up to
+     */
+    public void releaseBinaryBridge(long position) {
+        BinaryBridge bridge = mBinaryBridge;
+        if (bridge != null) {
+            bridge.release(position);
+        }
+    }
+
+    /**
+     * Gets the amount of frames that didn't fit in the ring because Unity didn't drain it in time
+     */
+    public long getBinaryBridgeDroppedFrames() {
+        BinaryBridge bridge = mBinaryBridge;
+        return bridge == null ? 0 : bridge.getDroppedFrames();
+    }
+
+    /**
+     * Writes every notification of a Characteristic into its own fixed-size ring instead of sending it to Unity.
+     * Unity reads the ring through GetDirectBufferAddress and advances the read index in its header itself,
+     * see {@link CharacteristicRing} for the layout. Takes precedence over the binary bridge for this Characteristic
+     *
+     * @param device      the device MAC Address
+     * @param handle      the handle of the Characteristic
+     * @param slotCount   the amount of notifications the ring can hold, rounded up to a power of two
+     * @param payloadSize the largest notification a slot can hold, 0 to fit the largest MTU the connection can negotiate
+     * @return the direct buffer of the ring, or null if the Characteristic can't be found
+     */
+    public ByteBuffer enableCharacteristicRing(String device, int handle, int slotCount, int payloadSize) {
+        ConnectionService connection = getConnection(device);
+
+        if (connection == null || connection.handleTable.get(handle) == null) {
+            reportMissingCharacteristic("EnableCharacteristicRing", device, null, handle);
+            return null;
+        }
+
+        CharacteristicRing ring = new CharacteristicRing(slotCount > 0 ? slotCount : CharacteristicRing.DEFAULT_SLOT_COUNT,
+                payloadSize > 0 ? payloadSize : CharacteristicRing.MAX_PAYLOAD_SIZE);
+
+        connection.router.setRing(handle, ring);
+        return ring.getBuffer();
+    }
+
+    /**
+     * Stops writing the notifications of a Characteristic into its ring, they're sent the usual way again
+     *
+     * @param device the device MAC Address
+     * @param handle the handle of the Characteristic
+     */
+    public void disableCharacteristicRing(String device, int handle) {
+        ConnectionService connection = getConnection(device);
+
+        if (connection != null) {
+            connection.router.setRing(handle, null);
+        }
+    }
+
+    /**
+     * Marks the slots of a Characteristic ring as read, for consumers that can't write to the buffer header themselves
+     *
+     * @param device    the device MAC Address
+     * @param handle    the handle of the Characteristic
+     * @param readIndex the amount of slots that have been read
+     */
+    public void releaseCharacteristicRing(String device, int handle, long readIndex) {
+        ConnectionService connection = getConnection(device);
+        CharacteristicRing ring = connection == null ? null : connection.router.getRing(handle);
+
+        if (ring != null) {
+            ring.setReadIndex(readIndex);
+        }
+    }
+    //endregion
+
+    //region Dispatching
+
+    /**
+     * Gets the dispatcher whose worker thread encodes messages and sends them to Unity
+     */
+    public static MessageDispatcher getDispatcher() {
+        return mDispatcher;
+    }
+
+    /**
+     * Gets the amount of messages that are waiting on the dispatcher thread
+     */
+    public int getDispatchQueueDepth() {
+        return mDispatcher.getDepth();
+    }
+
+    /**
+     * Gets the amount of messages that have been dropped because the dispatcher couldn't keep up
+     */
+    public long getDispatchDroppedCount() {
+        return mDispatcher.getDropped();
+    }
+    //endregion
+
+    //region Metrics
+
+    /**
+     * Starts counting notifications, GATT operations and reconnects per device and Characteristic
+     * Recording only uses atomics, but it stays off until it's asked for
+     */
+    public void enableMetrics() {
+        if (mMetrics == null) {
+            mMetrics = new MetricsRegistry();
+        }
+    }
+
+    /**
+     * Stops recording metrics and throws away everything that was recorded
+     */
+    public void disableMetrics() {
+        mMetrics = null;
+    }
+
+    /**
+     * Takes a snapshot of the metrics of every device, along with the state of the dispatcher and binary bridge.
+     * Notification and byte rates are averaged over the time since the previous snapshot,
+     * so polling this at a fixed interval gives the throughput of that interval
+     *
+     * @return the snapshot as JSON, or null if metrics are disabled
+     */
+    public String getMetricsSnapshot() {
+        MetricsRegistry metrics = mMetrics;
+
+        if (metrics == null) {
+            return null;
+        }
+
+        try {
+            JSONObject obj = metrics.snapshot();
+
+            obj.put("dispatchQueueDepth", mDispatcher.getDepth());
+            obj.put("dispatchDropped", mDispatcher.getDropped());
+            obj.put("binaryBridgeDropped", getBinaryBridgeDroppedFrames());
+
+            return obj.toString();
+        } catch (JSONException e) {
+            BleLog.e("Couldn't encode the metrics snapshot", e);
+            return null;
+        }
+    }
+    //endregion
+
+    //region Batching
+
+    /**
+     * Collects Characteristic notifications and sends them as a single CharacteristicValuesChanged message,
+     * grouped per device and Characteristic, instead of one CharacteristicValueChanged message each
+     *
+     * @param flushInterval the maximum time in milliseconds a notification waits before the batch is sent
+     * @param maxBatchSize  the amount of notifications that sends the batch right away
+     */
+    public void enableNotificationBatching(int flushInterval, int maxBatchSize) {
+        NotificationBatcher previous = mNotificationBatcher;
+        mNotificationBatcher = new NotificationBatcher(flushInterval, maxBatchSize, mDispatcher.getLooper());
 
-        UUID serviceUUID = UUID.fromString(service);
-        BluetoothGattService gattService = gattServer.getService(serviceUUID);
+        if (previous != null) {
+            previous.close();
+        }
+    }
 
-        UUID gattUUID = UUID.fromString(characteristic);
-        BluetoothGattCharacteristic gattCharacteristic = gattService.getCharacteristic(gattUUID);
+    /**
+     * Sends what's left in the batch and goes back to sending every notification on its own
+     */
+    public void disableNotificationBatching() {
+        NotificationBatcher previous = mNotificationBatcher;
+        mNotificationBatcher = null;
 
-        gattServer.readCharacteristic(gattCharacteristic);
+        if (previous != null) {
+            previous.close();
+        }
     }
     //endregion
 
     //region Writing
     @SuppressLint("MissingPermission")
     public void writeToGattCharacteristic(String device, String service, String characteristic, byte[] message) {
-        BluetoothDevice bDevice = mLeDeviceListAdapter.getItem(device);
-        BluetoothGatt gattServer = mLeGattServers.get(bDevice);
+        ConnectionService connection = getConnection(device);
+        write(connection, device, characteristic, getHandle(connection, service, characteristic), message);
+    }
 
-        UUID serviceUUID = UUID.fromString("0000" + service + "-0000-1000-8000-00805f9b34fb");
-        BluetoothGattService gattService = gattServer.getService(serviceUUID);
+    public void writeToGattCharacteristic(String device, String service, String characteristic, String message) {
+        ConnectionService connection = getConnection(device);
+        write(connection, device, characteristic, getHandle(connection, service, characteristic), message.getBytes(StandardCharsets.UTF_8));
+    }
 
-        UUID gattUUID = UUID.fromString("0000" + characteristic + "-0000-1000-8000-00805f9b34fb");
-        BluetoothGattCharacteristic gattCharacteristic = gattService.getCharacteristic(gattUUID);
+    public void writeToCustomGattCharacteristic(String device, String service, String characteristic, String message) {
+        byte[] decodedBytes = Base64.decode(message, 0);
+        BleLog.tracePayload("WriteToCharacteristic", device, characteristic, decodedBytes);
 
-        gattCharacteristic.setValue(message);
-        gattServer.writeCharacteristic(gattCharacteristic);
+        ConnectionService connection = getConnection(device);
+        write(connection, device, characteristic, getHandle(connection, service, characteristic), decodedBytes);
     }
 
-    public void writeToGattCharacteristic(String device, String service, String characteristic, String message) {
-        BluetoothDevice bDevice = mLeDeviceListAdapter.getItem(device);
-        BluetoothGatt gattServer = mLeGattServers.get(bDevice);
+    /**
+     * Writes to the Characteristic behind a handle from the DiscoveredCharacteristic command
+     *
+     * @param device  the device MAC Address
+     * @param handle  the handle of the Characteristic to write to
+     * @param message the value to write
+     */
+    public void writeToCharacteristicHandle(final String device, final int handle, final byte[] message) {
+        ConnectionService connection = getConnection(device);
+
+        if (connection != null && connection.holdUntilDiscovered("WriteToCharacteristic", new Runnable() {
+            @Override
+            public void run() {
+                writeToCharacteristicHandle(device, handle, message);
+            }
+        })) {
+            return;
+        }
+
+        write(connection, device, null, handle, message);
+    }
 
-        UUID serviceUUID = UUID.fromString("0000" + service + "-0000-1000-8000-00805f9b34fb");
-        BluetoothGattService gattService = gattServer.getService(serviceUUID);
+    private void write(ConnectionService connection, String device, String characteristic, int handle, byte[] message) {
+        BluetoothGattCharacteristic gattCharacteristic = connection == null ? null : connection.handleTable.get(handle);
 
-        UUID gattUUID = UUID.fromString("0000" + characteristic + "-0000-1000-8000-00805f9b34fb");
-        BluetoothGattCharacteristic gattCharacteristic = gattService.getCharacteristic(gattUUID);
+        if (gattCharacteristic != null) {
+            connection.valueCache.invalidate(handle);
+            //Characteristics that only support writes without response have that as their default write type
+            boolean withResponse = gattCharacteristic.getWriteType() != BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE;
 
-        gattCharacteristic.setValue(message);
-        gattServer.writeCharacteristic(gattCharacteristic);
+            enqueueOperation(connection, new WriteCharacteristicOperation(handle, gattCharacteristic.getService().getUuid().toString(),
+                    gattCharacteristic.getUuid().toString(), message, withResponse));
+        } else {
+            reportMissingCharacteristic("WriteToCharacteristic", device, characteristic, handle);
+        }
     }
+    //endregion
 
-    public void writeToCustomGattCharacteristic(String device, String service, String characteristic, String message) {
-        byte[] decodedBytes = Base64.decode(message, 0);
-        androidLog(Arrays.toString(decodedBytes));
+    //region Streaming
 
-        BluetoothDevice bDevice = mLeDeviceListAdapter.getItem(device);
-        BluetoothGatt gattServer = mLeGattServers.get(bDevice);
+    /**
+     * Streams the payload to a Characteristic using write without response, cut into chunks that fit the negotiated MTU.
+     * Consecutive calls append to the same stream, Unity receives WriteStreamFinished once it's closed and fully written
+     *
+     * @param device         the device MAC Address
+     * @param service        the UUID of the service under which the Characteristic is specified
+     * @param characteristic the UUID of the Characteristic to stream to
+     * @param payload        the data to append to the stream
+     */
+    public void writeStreamToCustomGattCharacteristic(String device, String service, String characteristic, byte[] payload) {
+        ConnectionService connection = getConnection(device);
+        BluetoothGattCharacteristic gattCharacteristic = connection == null ? null
+                : connection.handleTable.get(connection.handleTable.getHandle(service, characteristic));
 
-        UUID serviceUUID = UUID.fromString(service);
-        BluetoothGattService gattService = gattServer.getService(serviceUUID);
+        if (gattCharacteristic != null) {
+            connection.openWriteStream(gattCharacteristic, mWriteStreamWindow).append(payload);
+        } else {
+            reportMissingCharacteristic("WriteStreamFinished", device, characteristic, GattHandleTable.INVALID_HANDLE);
+        }
+    }
 
-        UUID gattUUID = UUID.fromString(characteristic);
-        BluetoothGattCharacteristic gattCharacteristic = gattService.getCharacteristic(gattUUID);
+    /**
+     * Closes the write stream of a Characteristic, it finishes once all the appended data has been written
+     *
+     * @param device         the device MAC Address
+     * @param service        the UUID of the service under which the Characteristic is specified
+     * @param characteristic the UUID of the Characteristic that's being streamed to
+     */
+    public void closeWriteStream(String device, String service, String characteristic) {
+        ConnectionService connection = getConnection(device);
+        BluetoothGattCharacteristic gattCharacteristic = connection == null ? null
+                : connection.handleTable.get(connection.handleTable.getHandle(service, characteristic));
+
+        GattWriteStream stream = gattCharacteristic == null ? null : connection.getWriteStream(gattCharacteristic);
+        if (stream != null) {
+            stream.close();
+        }
+    }
 
-        gattCharacteristic.setValue(decodedBytes);
-        gattServer.writeCharacteristic(gattCharacteristic);
+    /**
+     * Sets the amount of chunks a new write stream may have queued at once,
+     * a larger window fills the link better but delays other operations on the same connection
+     *
+     * @param window the amount of credits of a new write stream
+     */
+    public void setWriteStreamWindow(int window) {
+        mWriteStreamWindow = window;
     }
     //endregion
 
@@ -567,22 +2077,93 @@ public class UnityAndroidBLE {
      *
      * @param message the message to be logged
      */
-    public static void unityLog(String message) {
-        UnityPlayer.UnitySendMessage(mUnityBLEReceiver, mUnityLogCommand, message);
+    public static void unityLog(final String message) {
+        MessageDispatcher dispatcher = mDispatcher;
+
+        if (dispatcher != null && !dispatcher.isWorkerThread()) {
+            dispatcher.post(new Runnable() {
+                @Override
+                public void run() {
+                    mUnitySink.send(mUnityBLEReceiver, mUnityLogCommand, message);
+                }
+            });
+        } else {
+            mUnitySink.send(mUnityBLEReceiver, mUnityLogCommand, message);
+        }
+    }
+
+    /**
+     * Sends a message to Unity from any thread. Messages are handed to the dispatcher thread,
+     * so they reach Unity in the order they were sent, whichever thread they came from.
+     * The object is encoded later on, so it mustn't be changed after it has been sent
+     *
+     * @param obj the message to send
+     */
+    public static void sendToUnity(final BleObject obj) {
+        MessageDispatcher dispatcher = mDispatcher;
+
+        if (dispatcher != null && !dispatcher.isWorkerThread()) {
+            dispatcher.post(new Runnable() {
+                @Override
+                public void run() {
+                    deliver(obj);
+                }
+            });
+        } else {
+            deliver(obj);
+        }
+    }
+
+    private static void deliver(BleObject obj) {
+        NotificationBatcher batcher = mNotificationBatcher;
+
+        if (batcher != null) {
+            if (batcher.add(obj)) {
+                return;
+            }
+
+            //Anything that isn't batched flushes the batch first, so Unity receives the messages in order
+            batcher.flush();
+        }
+
+        mUnitySink.send(mUnityBLEReceiver, mUnityBLECommand, obj.toJson());
     }
 
-    public static void sendToUnity(BleObject obj) {
-        UnityPlayer.UnitySendMessage(mUnityBLEReceiver, mUnityBLECommand, obj.toJson());
+    /**
+     * Replaces where messages for Unity are delivered
+     *
+     * @param sink the sink to deliver to, or null to send them to Unity again
+     */
+    public static void setUnitySink(UnitySink sink) {
+        mUnitySink = sink != null ? sink : new UnityPlayerSink();
     }
 
     /**
-     * Logs a message using Log.i
+     * Logs a message from Unity using Log.i, if the log level lets it through
      * This removes the clog of messages that Unity sends when using Debug.Log on Android
      *
      * @param message the message to log using Android log
      */
     public static void androidLog(String message) {
-        Log.i("UnityAndroidBLE", message);
+        BleLog.i(message);
+    }
+
+    /**
+     * Sets the lowest level the library logs to logcat, defaults to BleLog.INFO
+     *
+     * @param level 2 (verbose) through 6 (error) like android.util.Log, or BleLog.NONE to log nothing
+     */
+    public void setLogLevel(int level) {
+        BleLog.setLevel(level);
+    }
+
+    /**
+     * Writes a sample of received and written payloads to logcat as hex, for debugging
+     *
+     * @param interval trace one out of this many payloads, 1 traces all of them and 0 disables the trace
+     */
+    public void setPayloadTrace(int interval) {
+        BleLog.setPayloadTrace(interval);
     }
     //endregion
 }
\ No newline at end of file
@@ -0,0 +1,161 @@
+package com.velorexe.unityandroidble.bridge;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Preallocated direct ByteBuffer ring that Characteristic notifications get written to
+ * without allocating, so Unity can drain them by pointer instead of receiving a JSON message per notification.
+ *
+ * Every frame starts at an offset aligned to {@link #FRAME_ALIGNMENT} and never wraps around the end of the buffer.
+ * The header is little-endian and {@link #HEADER_SIZE} bytes long:
+ * <pre>
+ * offset 0  uint16 device index         (PADDING_INDEX marks a padding frame, skip it)
+ * offset 2  uint16 characteristic index
+ * offset 4  uint16 payload length
+ * offset 6  uint16 sequence number of the notification, per Characteristic, wraps around
+ * offset 8  int64  timestamp in nanoseconds
+ * offset 16 payload
+ * </pre>
+ * Positions are absolute byte counts, the offset inside the buffer is position modulo the capacity.
+ * Unity reads every frame between its read position and {@link #getWritePosition()},
+ * then hands the new read position back through {@link #release(long)}.
+ */
+public class BinaryBridge {
+    public static final int HEADER_SIZE = 16;
+    public static final int FRAME_ALIGNMENT = 16;
+
+    public static final int PADDING_INDEX = 0xFFFF;
+    public static final int MAX_PAYLOAD_LENGTH = 0xFFFF;
+
+    private static final int MIN_CAPACITY = 1024;
+
+    private final ByteBuffer mBuffer;
+    //Second view on the same memory, used for bulk payload copies so mBuffer's position is never touched
+    private final ByteBuffer mPayloadWriter;
+
+    private final int mCapacity;
+    private final int mMask;
+
+    private volatile long mWritePosition = 0;
+    private volatile long mReadPosition = 0;
+
+    private volatile long mDroppedFrames = 0;
+
+    /**
+     * Creates a new ring, the capacity is rounded up to the next power of two
+     *
+     * @param capacity the minimum size of the ring in bytes
+     */
+    public BinaryBridge(int capacity) {
+        int size = MIN_CAPACITY;
+        while (size < capacity) {
+            size <<= 1;
+        }
+
+        mCapacity = size;
+        mMask = size - 1;
+
+        mBuffer = ByteBuffer.allocateDirect(size).order(ByteOrder.LITTLE_ENDIAN);
+        mPayloadWriter = mBuffer.duplicate();
+    }
+
+    /**
+     * Writes a single frame to the ring
+     *
+     * @param deviceIndex         the index of the device the data came from, below PADDING_INDEX
+     * @param characteristicIndex the index of the Characteristic the data came from, below PADDING_INDEX
+     * @param sequence            the sequence number of the notification, only the lower 16 bits are kept
+     * @param timestamp           the time the data was received in nanoseconds
+     * @param data                the payload of the frame
+     * @return false if the frame was dropped because Unity didn't drain the ring fast enough,
+     * or because an index doesn't fit in the header without being read as padding
+     */
+    public synchronized boolean write(int deviceIndex, int characteristicIndex, int sequence, long timestamp, byte[] data) {
+        int length = data == null ? 0 : data.length;
+        int frameSize = align(HEADER_SIZE + length);
+
+        //An index of -1 or above 0xFFFE would be truncated into something else, or into PADDING_INDEX and skipped
+        if (!isValidIndex(deviceIndex) || !isValidIndex(characteristicIndex) || length > MAX_PAYLOAD_LENGTH || frameSize > mCapacity) {
+            mDroppedFrames++;
+            return false;
+        }
+
+        long position = mWritePosition;
+        int offset = (int) (position & mMask);
+
+        //Frames never wrap, so the rest of the buffer gets filled with a padding frame when it's too small
+        int padding = mCapacity - offset < frameSize ? mCapacity - offset : 0;
+
+        if (position + padding + frameSize - mReadPosition > mCapacity) {
+            mDroppedFrames++;
+            return false;
+        }
+
+        if (padding > 0) {
+            writeHeader(offset, PADDING_INDEX, PADDING_INDEX, padding - HEADER_SIZE, 0, 0);
+
+            position += padding;
+            offset = 0;
+        }
+
+        writeHeader(offset, deviceIndex, characteristicIndex, length, sequence, timestamp);
+
+        if (length > 0) {
+            mPayloadWriter.clear();
+            mPayloadWriter.position(offset + HEADER_SIZE);
+            mPayloadWriter.put(data, 0, length);
+        }
+
+        //Publishing the position last makes the frame visible to Unity only once it's complete
+        mWritePosition = position + frameSize;
+        return true;
+    }
+
+    private void writeHeader(int offset, int deviceIndex, int characteristicIndex, int length, int sequence, long timestamp) {
+        mBuffer.putShort(offset, (short) deviceIndex);
+        mBuffer.putShort(offset + 2, (short) characteristicIndex);
+        mBuffer.putShort(offset + 4, (short) length);
+        mBuffer.putShort(offset + 6, (short) sequence);
+        mBuffer.putLong(offset + 8, timestamp);
+    }
+
+    private static boolean isValidIndex(int index) {
+        return index >= 0 && index < PADDING_INDEX;
+    }
+
+    private static int align(int size) {
+        return (size + FRAME_ALIGNMENT - 1) & -FRAME_ALIGNMENT;
+    }
+
+    /**
+     * Marks everything up to the given position as read, freeing it up for new frames
+     *
+     * @param position the absolute read position Unity has drained up to
+     */
+    public void release(long position) {
+        if (position > mReadPosition && position <= mWritePosition) {
+            mReadPosition = position;
+        }
+    }
+
+    public ByteBuffer getBuffer() {
+        return mBuffer;
+    }
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    public long getWritePosition() {
+        return mWritePosition;
+    }
+
+    public long getReadPosition() {
+        return mReadPosition;
+    }
+
+    public long getDroppedFrames() {
+        return mDroppedFrames;
+    }
+}
@@ -0,0 +1,205 @@
+package com.velorexe.unityandroidble.bridge;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Fixed-size direct ByteBuffer ring for the notifications of a single Characteristic,
+ * meant for high-rate streams that Unity drains every frame through GetDirectBufferAddress.
+ * There is exactly one producer (the binder thread of the connection) and one consumer (Unity),
+ * so both indices live in the buffer itself and neither side ever takes a lock.
+ *
+ * The buffer is little-endian and starts with a {@link #HEADER_SIZE} byte header:
+ * <pre>
+ * offset 0  int64 write index, the amount of slots published so far
+ * offset 8  int64 read index, the amount of slots the consumer is done with, written by the consumer
+ * offset 16 int32 slot count, always a power of two
+ * offset 20 int32 slot size in bytes, including the slot header
+ * offset 24 int64 dropped slots
+ * </pre>
+ * Slot i lives at HEADER_SIZE + (i & (slot count - 1)) * slot size and starts with its own {@link #SLOT_HEADER_SIZE} byte header:
+ * <pre>
+ * offset 0  uint16 payload length
+ * offset 2  uint16 reserved
+ * offset 4  uint32 sequence number of the notification
+ * offset 8  int64  timestamp in nanoseconds
+ * offset 16 payload
+ * </pre>
+ * When the ring is full new notifications are dropped and counted, memory never grows.
+ * The write index is stored with release semantics after the slot, and the read index is loaded with acquire semantics,
+ * so a consumer that loads the write index with acquire semantics always sees the complete slot
+ */
+public class CharacteristicRing {
+    public static final int HEADER_SIZE = 64;
+    public static final int SLOT_HEADER_SIZE = 16;
+
+    public static final int WRITE_INDEX_OFFSET = 0;
+    public static final int READ_INDEX_OFFSET = 8;
+    public static final int SLOT_COUNT_OFFSET = 16;
+    public static final int SLOT_SIZE_OFFSET = 20;
+    public static final int DROPPED_OFFSET = 24;
+
+    public static final int DEFAULT_SLOT_COUNT = 256;
+
+    //Largest ATT payload of a notification, the largest MTU of 517 minus the 3 byte ATT header
+    public static final int MAX_PAYLOAD_SIZE = 514;
+
+    private static final boolean HAS_VAR_HANDLES = hasVarHandles();
+
+    private final ByteBuffer mBuffer;
+    private final ByteBuffer mPayloadWriter;
+
+    private final int mSlotCount;
+    private final int mSlotSize;
+    private final int mMask;
+
+    private long mWriteIndex = 0;
+    private volatile long mDropped = 0;
+
+    private volatile long mPublished = 0;
+
+    //Only used for its barrier below API 33, see fence()
+    private volatile int mFence = 0;
+
+    /**
+     * Creates a new ring, the slot count is rounded up to the next power of two
+     *
+     * @param slotCount   the minimum amount of slots
+     * @param payloadSize the largest payload a slot can hold, MAX_PAYLOAD_SIZE fits any MTU the connection negotiates later on
+     */
+    public CharacteristicRing(int slotCount, int payloadSize) {
+        int count = 2;
+        while (count < slotCount) {
+            count <<= 1;
+        }
+
+        mSlotCount = count;
+        mMask = count - 1;
+        //Slots stay 8-byte aligned so the timestamps can be read without unaligned loads
+        mSlotSize = (SLOT_HEADER_SIZE + Math.max(1, payloadSize) + 7) & -8;
+
+        mBuffer = ByteBuffer.allocateDirect(HEADER_SIZE + count * mSlotSize).order(ByteOrder.LITTLE_ENDIAN);
+        mPayloadWriter = mBuffer.duplicate();
+
+        mBuffer.putInt(SLOT_COUNT_OFFSET, mSlotCount);
+        mBuffer.putInt(SLOT_SIZE_OFFSET, mSlotSize);
+    }
+
+    /**
+     * Writes a notification to the next slot, must only be called from a single thread at a time
+     *
+     * @param timestamp the time the notification was received in nanoseconds
+     * @param sequence  the sequence number of the notification
+     * @param data      the value of the notification
+     * @return false if the notification was dropped because the ring was full or it didn't fit in a slot
+     */
+    public boolean write(long timestamp, int sequence, byte[] data) {
+        int length = data == null ? 0 : data.length;
+
+        if (length > mSlotSize - SLOT_HEADER_SIZE || mWriteIndex - loadAcquire(READ_INDEX_OFFSET) >= mSlotCount) {
+            mBuffer.putLong(DROPPED_OFFSET, ++mDropped);
+            return false;
+        }
+
+        int offset = HEADER_SIZE + (int) (mWriteIndex & mMask) * mSlotSize;
+
+        mBuffer.putShort(offset, (short) length);
+        mBuffer.putShort(offset + 2, (short) 0);
+        mBuffer.putInt(offset + 4, sequence);
+        mBuffer.putLong(offset + 8, timestamp);
+
+        if (length > 0) {
+            mPayloadWriter.clear();
+            mPayloadWriter.position(offset + SLOT_HEADER_SIZE);
+            mPayloadWriter.put(data, 0, length);
+        }
+
+        publish(++mWriteIndex);
+        return true;
+    }
+
+    /**
+     * Makes the slot visible to the consumer, the write index is stored with release semantics
+     * so none of the slot's stores can become visible after it
+     */
+    private void publish(long writeIndex) {
+        storeRelease(WRITE_INDEX_OFFSET, writeIndex);
+        mPublished = writeIndex;
+    }
+
+    private void storeRelease(int offset, long value) {
+        if (HAS_VAR_HANDLES) {
+            Indices.LONGS.setRelease(mBuffer, offset, value);
+        } else {
+            fence();
+            mBuffer.putLong(offset, value);
+        }
+    }
+
+    private long loadAcquire(int offset) {
+        if (HAS_VAR_HANDLES) {
+            return (long) Indices.LONGS.getAcquire(mBuffer, offset);
+        }
+
+        long value = mBuffer.getLong(offset);
+        fence();
+
+        return value;
+    }
+
+    /**
+     * Keeps every memory access before it ahead of every access after it, for Android versions without VarHandles.
+     * A volatile store followed by a volatile load can't be reordered, and ART compiles them to stlr and ldar on arm64:
+     * nothing before the store moves past it, and nothing after the load moves ahead of it
+     */
+    private void fence() {
+        mFence = 0;
+        int ignored = mFence;
+    }
+
+    /**
+     * Marks every slot up to the given index as read, for consumers that can't write to the buffer themselves
+     *
+     * @param readIndex the amount of slots the consumer is done with
+     */
+    public void setReadIndex(long readIndex) {
+        if (readIndex > loadAcquire(READ_INDEX_OFFSET) && readIndex <= mPublished) {
+            storeRelease(READ_INDEX_OFFSET, readIndex);
+        }
+    }
+
+    public ByteBuffer getBuffer() {
+        return mBuffer;
+    }
+
+    public int getSlotCount() {
+        return mSlotCount;
+    }
+
+    public int getSlotSize() {
+        return mSlotSize;
+    }
+
+    public long getWriteIndex() {
+        return mPublished;
+    }
+
+    public long getDropped() {
+        return mDropped;
+    }
+
+    //VarHandles only exist from API 33 onwards, older versions fail to load this class and fall back to fence()
+    private static boolean hasVarHandles() {
+        try {
+            return Indices.LONGS != null;
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+
+    private static final class Indices {
+        static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    }
+}
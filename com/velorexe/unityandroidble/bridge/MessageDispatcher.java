@@ -0,0 +1,137 @@
+package com.velorexe.unityandroidble.bridge;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Dedicated worker thread that encodes messages and dispatches them to Unity.
+ * GATT callbacks only hand their raw data to a bounded lock-free queue and return straight away,
+ * so slow encoding never delays the next callback from the Bluetooth stack.
+ * When the queue is full new tasks are dropped and counted instead of blocking the binder thread,
+ * only status messages that Unity can't do without are posted past the capacity.
+ * Every message to Unity goes through this queue, so Unity receives them in the order they were sent
+ */
+public class MessageDispatcher {
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private final HandlerThread mThread;
+    private final Handler mHandler;
+
+    private final ConcurrentLinkedQueue<Runnable> mQueue = new ConcurrentLinkedQueue<Runnable>();
+    private final int mCapacity;
+
+    private final AtomicInteger mDepth = new AtomicInteger();
+    private final AtomicLong mDropped = new AtomicLong();
+
+    private final AtomicBoolean mDrainScheduled = new AtomicBoolean();
+
+    private final Runnable mDrainRunnable = new Runnable() {
+        @Override
+        public void run() {
+            //Cleared before draining, so a task that's added while draining schedules another pass
+            mDrainScheduled.set(false);
+
+            Runnable task;
+            while ((task = mQueue.poll()) != null) {
+                mDepth.decrementAndGet();
+                task.run();
+            }
+        }
+    };
+
+    /**
+     * Starts the worker thread
+     *
+     * @param capacity the amount of tasks that may wait in the queue before new ones are dropped
+     */
+    public MessageDispatcher(int capacity) {
+        mCapacity = Math.max(1, capacity);
+
+        mThread = new HandlerThread("UnityAndroidBLE-Dispatcher", Process.THREAD_PRIORITY_FOREGROUND);
+        mThread.start();
+
+        mHandler = new Handler(mThread.getLooper());
+    }
+
+    /**
+     * Hands a task to the worker thread, safe to call from any thread
+     *
+     * @param task the task to run on the worker thread
+     * @return false if the queue was full and the task has been dropped
+     */
+    public boolean dispatch(Runnable task) {
+        if (mDepth.incrementAndGet() > mCapacity) {
+            mDepth.decrementAndGet();
+            mDropped.incrementAndGet();
+
+            return false;
+        }
+
+        enqueue(task);
+        return true;
+    }
+
+    /**
+     * Hands a task to the worker thread even when the queue is full, for messages that can't be dropped
+     *
+     * @param task the task to run on the worker thread
+     */
+    public void post(Runnable task) {
+        mDepth.incrementAndGet();
+        enqueue(task);
+    }
+
+    /**
+     * Checks whether the calling thread is the worker thread, tasks on it can send to Unity directly and stay in order
+     */
+    public boolean isWorkerThread() {
+        return Looper.myLooper() == mThread.getLooper();
+    }
+
+    private void enqueue(Runnable task) {
+        mQueue.offer(task);
+
+        if (mDrainScheduled.compareAndSet(false, true)) {
+            mHandler.post(mDrainRunnable);
+        }
+    }
+
+    /**
+     * Gets the Looper of the worker thread, for timers that should fire on it
+     */
+    public Looper getLooper() {
+        return mThread.getLooper();
+    }
+
+    /**
+     * Gets the amount of tasks that are waiting to be run
+     */
+    public int getDepth() {
+        return mDepth.get();
+    }
+
+    /**
+     * Gets the amount of tasks that were dropped because the queue was full
+     */
+    public long getDropped() {
+        return mDropped.get();
+    }
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    /**
+     * Runs the tasks that are still queued and stops the worker thread
+     */
+    public void quit() {
+        mThread.quitSafely();
+    }
+}
@@ -0,0 +1,100 @@
+package com.velorexe.unityandroidble.bridge;
+
+import com.velorexe.unityandroidble.BleObject;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * CharacteristicValueChanged messages grouped per device and Characteristic,
+ * turned into a single CharacteristicValuesChanged message once the batch is flushed.
+ * Not thread-safe, the NotificationBatcher guards it and swaps in a new one on every flush
+ */
+public class NotificationBatch {
+    //Keeps the order in which the Characteristics first appeared in the batch
+    private final Map<String, Entry> mEntries = new LinkedHashMap<String, Entry>();
+    private int mSize = 0;
+
+    /**
+     * Adds a CharacteristicValueChanged message to the batch
+     *
+     * @param obj the message
+     * @return the amount of messages in the batch, including this one
+     */
+    public int add(BleObject obj) {
+        String key = obj.device + obj.characteristic;
+        Entry entry = mEntries.get(key);
+
+        if (entry == null) {
+            entry = new Entry(obj);
+            mEntries.put(key, entry);
+        }
+
+        entry.add(obj);
+        return ++mSize;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Builds the CharacteristicValuesChanged message holding every message of the batch
+     */
+    public BleObject toBleObject() throws JSONException {
+        BleObject obj = new BleObject(NotificationBatcher.BATCH_COMMAND);
+        obj.batch = new JSONArray();
+
+        for (Entry entry : mEntries.values()) {
+            obj.batch.put(entry.toJson());
+        }
+
+        return obj;
+    }
+
+    private static class Entry {
+        final String device;
+        final String service;
+        final String characteristic;
+        final int characteristicIndex;
+
+        final JSONArray values = new JSONArray();
+        final JSONArray timestamps = new JSONArray();
+        final JSONArray sequences = new JSONArray();
+
+        Entry(BleObject obj) {
+            device = obj.device;
+            service = obj.service;
+            characteristic = obj.characteristic;
+            characteristicIndex = obj.characteristicIndex;
+        }
+
+        void add(BleObject obj) {
+            values.put(obj.base64Message);
+            timestamps.put(obj.timestamp);
+            sequences.put(obj.sequence);
+        }
+
+        JSONObject toJson() throws JSONException {
+            JSONObject obj = new JSONObject();
+
+            obj.put("device", device);
+            obj.put("service", service);
+            obj.put("characteristic", characteristic);
+
+            if (characteristicIndex >= 0) {
+                obj.put("characteristicIndex", characteristicIndex);
+            }
+
+            obj.put("base64Messages", values);
+            //Parallel to base64Messages, -1 where a value wasn't captured
+            obj.put("timestamps", timestamps);
+            obj.put("sequences", sequences);
+            return obj;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.velorexe.unityandroidble.bridge;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.velorexe.unityandroidble.BleLog;
+import com.velorexe.unityandroidble.BleObject;
+import com.velorexe.unityandroidble.UnityAndroidBLE;
+
+import org.json.JSONException;
+
+/**
+ * Collects CharacteristicValueChanged messages and sends them to Unity as a single
+ * CharacteristicValuesChanged message, grouped per device and Characteristic.
+ * A batch is flushed once its flush interval has passed since the first message, or once it holds maxBatchSize messages
+ */
+public class NotificationBatcher {
+    public static final String BATCHED_COMMAND = "CharacteristicValueChanged";
+    public static final String BATCH_COMMAND = "CharacteristicValuesChanged";
+
+    private final long mFlushInterval;
+    private final int mMaxBatchSize;
+
+    private final Handler mHandler;
+
+    private NotificationBatch mBatch = new NotificationBatch();
+
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * @param flushInterval the maximum time in milliseconds a message waits in the batch
+     * @param maxBatchSize  the amount of messages that flushes the batch right away
+     */
+    public NotificationBatcher(long flushInterval, int maxBatchSize) {
+        this(flushInterval, maxBatchSize, Looper.getMainLooper());
+    }
+
+    public NotificationBatcher(long flushInterval, int maxBatchSize, Looper looper) {
+        mFlushInterval = Math.max(1, flushInterval);
+        mMaxBatchSize = Math.max(1, maxBatchSize);
+
+        mHandler = new Handler(looper);
+    }
+
+    /**
+     * Adds the message to the current batch if it's a Characteristic notification
+     *
+     * @param obj the message that's about to be sent to Unity
+     * @return false if the message can't be batched and needs to be sent as is
+     */
+    public boolean add(BleObject obj) {
+        if (!BATCHED_COMMAND.equals(obj.command) || obj.hasError) {
+            return false;
+        }
+
+        boolean full;
+
+        synchronized (this) {
+            int size = mBatch.add(obj);
+
+            if (size == 1) {
+                mHandler.postDelayed(mFlushRunnable, mFlushInterval);
+            }
+
+            full = size >= mMaxBatchSize;
+        }
+
+        if (full) {
+            flush();
+        }
+
+        return true;
+    }
+
+    /**
+     * Sends everything that's in the current batch to Unity
+     */
+    public void flush() {
+        NotificationBatch batch;
+
+        synchronized (this) {
+            if (mBatch.size() == 0) {
+                return;
+            }
+
+            mHandler.removeCallbacks(mFlushRunnable);
+
+            batch = mBatch;
+            mBatch = new NotificationBatch();
+        }
+
+        try {
+            UnityAndroidBLE.sendToUnity(batch.toBleObject());
+        } catch (JSONException e) {
+            BleLog.e("Couldn't encode a batch of " + batch.size() + " notifications", e);
+        }
+    }
+
+    /**
+     * Flushes what's left and stops the flush timer
+     */
+    public void close() {
+        flush();
+        mHandler.removeCallbacks(mFlushRunnable);
+    }
+}
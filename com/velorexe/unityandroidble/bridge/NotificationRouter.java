@@ -0,0 +1,160 @@
+package com.velorexe.unityandroidble.bridge;
+
+import com.velorexe.unityandroidble.connection.CharacteristicValueCache;
+import com.velorexe.unityandroidble.metrics.CharacteristicMetrics;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Decides where the notifications of a single connection go: the ring of the Characteristic if it has one,
+ * the binary bridge if it's enabled, or the fallback that sends them as JSON messages otherwise.
+ * Repeated values of change-only Characteristics are dropped before they use up a sequence number.
+ *
+ * Only plain Java is used here, so the same path runs on a JVM in the load test of the benchmarks
+ */
+public class NotificationRouter {
+    public static final int ROUTED_TO_RING = 0;
+    public static final int ROUTED_TO_BRIDGE = 1;
+    public static final int ROUTED_TO_FALLBACK = 2;
+    public static final int SUPPRESSED = 3;
+    public static final int DROPPED = 4;
+
+    /**
+     * Sends a notification the usual way, when it can't be written to a ring or the binary bridge
+     */
+    public interface Fallback {
+        /**
+         * @param handle    the handle of the Characteristic
+         * @param sequence  the sequence number of the notification
+         * @param timestamp the time the notification arrived in nanoseconds
+         * @param data      the value of the notification
+         * @param metrics   the metrics of the Characteristic to record the delivery in, or null
+         * @return false if the notification was dropped
+         */
+        boolean send(int handle, int sequence, long timestamp, byte[] data, CharacteristicMetrics metrics);
+    }
+
+    public final int deviceIndex;
+
+    private final CharacteristicValueCache mValueCache;
+    private final Fallback mFallback;
+
+    //Notification rings by Characteristic handle, replaced as a whole so the binder thread can read it without locking
+    private volatile CharacteristicRing[] mRings = new CharacteristicRing[0];
+
+    //Next notification sequence number of every handle
+    private volatile AtomicIntegerArray mSequences = new AtomicIntegerArray(0);
+
+    /**
+     * @param deviceIndex the index identifying the device inside binary bridge frames
+     * @param valueCache  the cache that sees every value and knows which Characteristics are change-only
+     * @param fallback    where notifications go that aren't written to a ring or the binary bridge
+     */
+    public NotificationRouter(int deviceIndex, CharacteristicValueCache valueCache, Fallback fallback) {
+        this.deviceIndex = deviceIndex;
+
+        mValueCache = valueCache;
+        mFallback = fallback;
+    }
+
+    /**
+     * Routes a single notification
+     *
+     * @param handle    the handle of the Characteristic, it has to exist in the GATT table of the connection
+     * @param timestamp the time the notification arrived in nanoseconds
+     * @param data      the value of the notification
+     * @param bridge    the binary bridge, or null if it isn't enabled
+     * @param metrics   the metrics of the Characteristic, or null if they aren't collected
+     * @return where the notification went, the caller records the dispatch latency of ROUTED_TO_RING and ROUTED_TO_BRIDGE
+     */
+    public int route(int handle, long timestamp, byte[] data, BinaryBridge bridge, CharacteristicMetrics metrics) {
+        if (metrics != null) {
+            metrics.onNotification(data == null ? 0 : data.length);
+        }
+
+        //The cache sees every value, repeats of change-only Characteristics stop here without using up a sequence number
+        if (!mValueCache.put(handle, data, timestamp) && mValueCache.isChangeOnly(handle)) {
+            if (metrics != null) {
+                metrics.onSuppressed();
+            }
+
+            return SUPPRESSED;
+        }
+
+        int sequence = nextSequence(handle);
+        int routed;
+        boolean delivered;
+
+        CharacteristicRing ring = getRing(handle);
+        if (ring != null) {
+            routed = ROUTED_TO_RING;
+            delivered = ring.write(timestamp, sequence, data);
+        } else if (bridge != null) {
+            routed = ROUTED_TO_BRIDGE;
+            delivered = bridge.write(deviceIndex, handle, sequence, timestamp, data);
+        } else {
+            routed = ROUTED_TO_FALLBACK;
+            delivered = mFallback.send(handle, sequence, timestamp, data, metrics);
+        }
+
+        if (!delivered) {
+            if (metrics != null) {
+                metrics.onDropped();
+            }
+
+            return DROPPED;
+        }
+
+        return routed;
+    }
+
+    /**
+     * Takes the next notification sequence number of a Characteristic
+     *
+     * @param handle the handle of the Characteristic
+     * @return the sequence number, starting at 0, or -1 if the handle doesn't exist
+     */
+    public int nextSequence(int handle) {
+        AtomicIntegerArray sequences = mSequences;
+        return handle >= 0 && handle < sequences.length() ? sequences.getAndIncrement(handle) & Integer.MAX_VALUE : -1;
+    }
+
+    /**
+     * Starts the sequence numbers of every Characteristic over at 0, for a GATT table whose handles changed
+     *
+     * @param count the amount of Characteristics in the table
+     */
+    public void resetSequences(int count) {
+        mSequences = new AtomicIntegerArray(count);
+    }
+
+    /**
+     * Sets the ring the notifications of a Characteristic get written to
+     *
+     * @param handle the handle of the Characteristic
+     * @param ring   the ring to write to, or null to send the notifications the usual way again
+     */
+    public synchronized void setRing(int handle, CharacteristicRing ring) {
+        CharacteristicRing[] rings = mRings;
+
+        if (handle >= rings.length) {
+            CharacteristicRing[] grown = new CharacteristicRing[handle + 1];
+            System.arraycopy(rings, 0, grown, 0, rings.length);
+
+            rings = grown;
+        } else {
+            rings = rings.clone();
+        }
+
+        rings[handle] = ring;
+        mRings = rings;
+    }
+
+    /**
+     * Gets the ring of a Characteristic, or null if its notifications aren't written to one
+     */
+    public CharacteristicRing getRing(int handle) {
+        CharacteristicRing[] rings = mRings;
+        return handle >= 0 && handle < rings.length ? rings[handle] : null;
+    }
+}
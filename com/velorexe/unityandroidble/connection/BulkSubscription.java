@@ -0,0 +1,163 @@
+package com.velorexe.unityandroidble.connection;
+
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.os.SystemClock;
+
+import com.velorexe.unityandroidble.BleLog;
+import com.velorexe.unityandroidble.BleObject;
+import com.velorexe.unityandroidble.UnityAndroidBLE;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Collects the results of the CCCD writes of a bulk subscribe or unsubscribe,
+ * and reports all of them to Unity in a single message once the last one has completed.
+ * <pre>
+ * {"command": "SubscribedToCharacteristics", "device": address, "duration": 84.2, "batch": [
+ *     {"service": uuid, "characteristic": uuid, "characteristicIndex": 0, "indicate": false, "status": 0, "duration": 12.5}]}
+ * </pre>
+ * Durations are in milliseconds since the request was made, so they show when each subscription became active
+ */
+public class BulkSubscription {
+    private final String mCommand;
+    private final String mDevice;
+    private final int mDeviceIndex;
+
+    private final long mStarted = SystemClock.elapsedRealtimeNanos();
+
+    private final JSONObject[] mItems;
+    private int mRemaining;
+    private int mFailed = 0;
+
+    /**
+     * @param command     the command of the aggregate message
+     * @param device      the device MAC Address
+     * @param deviceIndex the index of the device, or -1 if it isn't connected
+     * @param count       the amount of Characteristics in the request
+     */
+    public BulkSubscription(String command, String device, int deviceIndex, int count) {
+        mCommand = command;
+        mDevice = device;
+        mDeviceIndex = deviceIndex;
+
+        mItems = new JSONObject[count];
+        mRemaining = count;
+
+        for (int i = 0; i < count; i++) {
+            mItems[i] = new JSONObject();
+        }
+    }
+
+    /**
+     * Describes an item of the request, before its CCCD write is queued
+     *
+     * @param item           the index of the item in the request
+     * @param service        the service UUID
+     * @param characteristic the Characteristic UUID
+     * @param handle         the handle of the Characteristic
+     * @param indicate       true if the item asked for indications instead of notifications
+     */
+    public synchronized void describe(int item, String service, String characteristic, int handle, boolean indicate) {
+        try {
+            mItems[item].put("service", service);
+            mItems[item].put("characteristic", characteristic);
+            mItems[item].put("characteristicIndex", handle);
+            mItems[item].put("indicate", indicate);
+        } catch (JSONException e) {
+            BleLog.e("Couldn't describe item " + item + " of " + mCommand, e);
+        }
+    }
+
+    /**
+     * Creates the CCCD write of an item, it reports to this request instead of sending its own message
+     *
+     * @param item           the index of the item in the request
+     * @param characteristic the Characteristic to subscribe to or unsubscribe from
+     * @param handle         the handle of the Characteristic
+     * @param enable         true to subscribe, false to unsubscribe
+     * @param indicate       true to subscribe to indications instead of notifications
+     * @param connection     the connection that forgets the subscription if the device rejects it, or null when unsubscribing
+     * @return the operation to queue
+     */
+    public GattOperation createOperation(final int item, final BluetoothGattCharacteristic characteristic, int handle, boolean enable, boolean indicate,
+                                         final ConnectionService connection) {
+        return new SetNotificationOperation(mCommand, handle, characteristic.getService().getUuid().toString(),
+                characteristic.getUuid().toString(), enable, indicate) {
+            @Override
+            public void onComplete(String device, int status) {
+                //Timeouts and lost connections keep the subscription, so it's restored after a reconnection
+                if (connection != null && isRejected(status)) {
+                    connection.removeSubscription(characteristic);
+                }
+
+                complete(item, status, status == BluetoothGatt.GATT_SUCCESS ? null : describeStatus(status));
+            }
+        };
+    }
+
+    /**
+     * Marks an item as done, the aggregate message is sent once every item is
+     *
+     * @param item         the index of the item in the request
+     * @param status       BluetoothGatt.GATT_SUCCESS or the reason the item failed
+     * @param errorMessage why the item failed, or null if it succeeded
+     */
+    public void complete(int item, int status, String errorMessage) {
+        synchronized (this) {
+            try {
+                mItems[item].put("status", status);
+                mItems[item].put("duration", getDuration());
+
+                if (errorMessage != null) {
+                    mItems[item].put("hasError", true);
+                    mItems[item].put("errorMessage", errorMessage);
+
+                    mFailed++;
+                }
+            } catch (JSONException e) {
+                BleLog.e("Couldn't report item " + item + " of " + mCommand, e);
+            }
+
+            if (--mRemaining > 0) {
+                return;
+            }
+        }
+
+        report();
+    }
+
+    /**
+     * Reports a request without any Characteristics right away, there's nothing to wait for
+     */
+    public void reportEmpty() {
+        if (mItems.length == 0) {
+            report();
+        }
+    }
+
+    private void report() {
+        BleObject obj = new BleObject(mCommand);
+
+        obj.device = mDevice;
+        obj.deviceIndex = mDeviceIndex;
+        obj.duration = getDuration();
+        obj.batch = new JSONArray();
+
+        for (int i = 0; i < mItems.length; i++) {
+            obj.batch.put(mItems[i]);
+        }
+
+        if (mFailed > 0) {
+            obj.setError(mFailed + " of " + mItems.length + " Characteristics failed");
+        }
+
+        UnityAndroidBLE.sendToUnity(obj);
+    }
+
+    private double getDuration() {
+        return (SystemClock.elapsedRealtimeNanos() - mStarted) / 1000000.0;
+    }
+}
@@ -0,0 +1,141 @@
+package com.velorexe.unityandroidble.connection;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The last value of every Characteristic of a connection, by its handle in the GattHandleTable.
+ * Both notifications and reads keep it up to date, so a read can be answered without a radio round-trip
+ * as long as the value is younger than the age the caller accepts. Writes invalidate the value,
+ * since the device's value isn't known again until it has been read or notified after the write.
+ * Characteristics can also be marked change-only, their notifications are dropped while the value stays the same
+ */
+public class CharacteristicValueCache {
+    /**
+     * A cached value together with the moment it arrived, read as a single reference so the two always belong together
+     */
+    public static final class CachedValue {
+        public final byte[] value;
+
+        //SystemClock.elapsedRealtimeNanos of the value arriving
+        public final long updatedAt;
+
+        CachedValue(byte[] value, long updatedAt) {
+            this.value = value;
+            this.updatedAt = updatedAt;
+        }
+    }
+
+    private volatile AtomicReferenceArray<CachedValue> mEntries = new AtomicReferenceArray<CachedValue>(0);
+
+    //Copy-on-write, it's read for every notification but only changes when Unity subscribes
+    private volatile boolean[] mChangeOnly = new boolean[0];
+
+    /**
+     * Stores the latest value of a Characteristic
+     *
+     * @param handle    the handle of the Characteristic
+     * @param value     the value, it's kept as is since the Bluetooth stack hands out a new array for every value
+     * @param updatedAt SystemClock.elapsedRealtimeNanos of the value arriving
+     * @return true if the value differs from the previous one, or there was no previous one
+     */
+    public boolean put(int handle, byte[] value, long updatedAt) {
+        if (handle < 0 || value == null) {
+            return true;
+        }
+
+        CachedValue previous = getEntries(handle).getAndSet(handle, new CachedValue(value, updatedAt));
+        return previous == null || !Arrays.equals(previous.value, value);
+    }
+
+    /**
+     * Gets the value of a Characteristic if it's recent enough
+     *
+     * @param handle the handle of the Characteristic
+     * @param maxAge the oldest value that's accepted, in nanoseconds
+     * @param now    SystemClock.elapsedRealtimeNanos of the moment the value is asked for
+     * @return the value and when it arrived, or null if there is none or it's too old
+     */
+    public CachedValue getFresh(int handle, long maxAge, long now) {
+        CachedValue entry = getEntry(handle);
+        return entry != null && now - entry.updatedAt <= maxAge ? entry : null;
+    }
+
+    /**
+     * Forgets the value of a Characteristic, used when a write to it gets queued
+     *
+     * @param handle the handle of the Characteristic
+     */
+    public void invalidate(int handle) {
+        AtomicReferenceArray<CachedValue> entries = mEntries;
+
+        if (handle >= 0 && handle < entries.length()) {
+            entries.set(handle, null);
+        }
+    }
+
+    public synchronized void setChangeOnly(int handle, boolean changeOnly) {
+        if (handle < 0) {
+            return;
+        }
+
+        boolean[] flags = mChangeOnly;
+
+        if (handle >= flags.length) {
+            if (!changeOnly) {
+                return;
+            }
+
+            flags = Arrays.copyOf(flags, handle + 1);
+        } else {
+            flags = flags.clone();
+        }
+
+        flags[handle] = changeOnly;
+        mChangeOnly = flags;
+    }
+
+    public boolean isChangeOnly(int handle) {
+        boolean[] flags = mChangeOnly;
+        return handle >= 0 && handle < flags.length && flags[handle];
+    }
+
+    /**
+     * Forgets every value and change-only flag, the handles aren't valid anymore once the connection is gone
+     */
+    public synchronized void clear() {
+        mEntries = new AtomicReferenceArray<CachedValue>(0);
+        mChangeOnly = new boolean[0];
+    }
+
+    private CachedValue getEntry(int handle) {
+        AtomicReferenceArray<CachedValue> entries = mEntries;
+        return handle >= 0 && handle < entries.length() ? entries.get(handle) : null;
+    }
+
+    private AtomicReferenceArray<CachedValue> getEntries(int handle) {
+        AtomicReferenceArray<CachedValue> entries = mEntries;
+
+        if (handle < entries.length()) {
+            return entries;
+        }
+
+        synchronized (this) {
+            entries = mEntries;
+
+            //Only grows while the first values come in, a value stored in the old array during the copy is just a cache miss
+            if (handle >= entries.length()) {
+                AtomicReferenceArray<CachedValue> grown = new AtomicReferenceArray<CachedValue>(Math.max(handle + 1, entries.length() * 2));
+
+                for (int i = 0; i < entries.length(); i++) {
+                    grown.set(i, entries.get(i));
+                }
+
+                mEntries = grown;
+                entries = grown;
+            }
+
+            return entries;
+        }
+    }
+}
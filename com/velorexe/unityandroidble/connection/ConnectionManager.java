@@ -0,0 +1,235 @@
+package com.velorexe.unityandroidble.connection;
+
+import android.bluetooth.BluetoothGatt;
+import android.content.Context;
+
+import com.velorexe.unityandroidble.BleObject;
+import com.velorexe.unityandroidble.DeviceEntry;
+import com.velorexe.unityandroidble.UnityAndroidBLE;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * Queues connection requests so only a limited amount of them are started at once.
+ * Android only has room for a handful of GATT clients (usually 7) and handles direct connects one at a time,
+ * firing them all at once makes every one of them slow or fail with status 133.
+ *
+ * Direct connects count against both the concurrent connect limit and the connection limit,
+ * autoConnect requests wait in the background for the device to show up, so they only count against the connection limit.
+ * GATT operations of every connection share the slots of a single {@link GattSlotScheduler}
+ */
+public class ConnectionManager {
+    public static final int DEFAULT_MAX_CONCURRENT_CONNECTS = 2;
+    public static final int DEFAULT_MAX_CONNECTIONS = 7;
+
+    private final ArrayDeque<Request> mQueued = new ArrayDeque<Request>();
+
+    //Addresses of the direct connects that have been started but haven't connected yet
+    private final Set<String> mConnecting = new HashSet<String>();
+    //Addresses that hold a GATT client, either connected or waiting in the background with autoConnect
+    private final Set<String> mClients = new HashSet<String>();
+
+    private int mMaxConcurrentConnects = DEFAULT_MAX_CONCURRENT_CONNECTS;
+    private int mMaxConnections = DEFAULT_MAX_CONNECTIONS;
+
+    public final GattSlotScheduler scheduler = new GattSlotScheduler();
+
+    /**
+     * Sets how many direct connects may be in progress at once
+     *
+     * @param maxConcurrentConnects the amount of connects, at least 1
+     */
+    public void setMaxConcurrentConnects(int maxConcurrentConnects) {
+        synchronized (this) {
+            mMaxConcurrentConnects = Math.max(1, maxConcurrentConnects);
+        }
+
+        pump();
+    }
+
+    /**
+     * Sets how many devices may hold a GATT client at once, connected or connecting
+     *
+     * @param maxConnections the amount of devices, at least 1
+     */
+    public void setMaxConnections(int maxConnections) {
+        synchronized (this) {
+            mMaxConnections = Math.max(1, maxConnections);
+        }
+
+        pump();
+    }
+
+    /**
+     * Queues a connection to a device, it starts right away if the limits allow it.
+     * The entry's connection has to be set before the request is queued
+     *
+     * @param entry       the device to connect to
+     * @param autoConnect true to let Android connect in the background whenever the device is in range,
+     *                    false to connect directly, which is a lot faster but gives up after about 30 seconds
+     */
+    public void request(DeviceEntry entry, boolean autoConnect) {
+        boolean queued;
+
+        synchronized (this) {
+            mQueued.add(new Request(entry, autoConnect));
+            queued = !canStart(autoConnect) || mQueued.size() > 1;
+        }
+
+        if (queued) {
+            BleObject obj = new BleObject("ConnectionQueued");
+
+            obj.device = entry.address;
+            obj.deviceIndex = entry.index;
+
+            UnityAndroidBLE.sendToUnity(obj);
+        }
+
+        pump();
+    }
+
+    /**
+     * Removes a request that hasn't been started yet
+     *
+     * @param address the device MAC Address
+     * @return true if a queued request was removed
+     */
+    public synchronized boolean cancel(String address) {
+        Iterator<Request> iterator = mQueued.iterator();
+
+        while (iterator.hasNext()) {
+            if (iterator.next().entry.address.equals(address)) {
+                iterator.remove();
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Gets called once a device has connected, its connect slot goes to the next request
+     */
+    public void onConnected(String address) {
+        synchronized (this) {
+            mConnecting.remove(address);
+            mClients.add(address);
+        }
+
+        pump();
+    }
+
+    /**
+     * Gets called once a device has disconnected or a connect has failed, its slots go to the next request
+     */
+    public void onDisconnected(String address) {
+        synchronized (this) {
+            cancel(address);
+
+            mConnecting.remove(address);
+            mClients.remove(address);
+        }
+
+        pump();
+    }
+
+    public synchronized int getQueuedCount() {
+        return mQueued.size();
+    }
+
+    private boolean canStart(boolean autoConnect) {
+        if (mClients.size() + mConnecting.size() >= mMaxConnections) {
+            return false;
+        }
+
+        return autoConnect || mConnecting.size() < mMaxConcurrentConnects;
+    }
+
+    /**
+     * Starts queued requests in order for as long as the limits allow it
+     */
+    private void pump() {
+        while (true) {
+            Request request;
+
+            synchronized (this) {
+                request = mQueued.peek();
+
+                if (request == null || !canStart(request.autoConnect)) {
+                    return;
+                }
+
+                mQueued.poll();
+
+                if (request.autoConnect) {
+                    mClients.add(request.entry.address);
+                } else {
+                    mConnecting.add(request.entry.address);
+                }
+            }
+
+            start(request);
+        }
+    }
+
+    private void start(Request request) {
+        DeviceEntry entry = request.entry;
+        ConnectionService connection = entry.connection;
+
+        //The request was disconnected from Unity while it was queued
+        if (connection == null) {
+            onDisconnected(entry.address);
+            return;
+        }
+
+        BleObject obj = new BleObject("StartConnection");
+
+        obj.device = entry.address;
+        obj.deviceIndex = entry.index;
+
+        UnityAndroidBLE.sendToUnity(obj);
+
+        Context context = UnityAndroidBLE.getContext();
+        BluetoothGatt gatt = entry.device.connectGatt(context, request.autoConnect, connection.gattCallback);
+
+        synchronized (entry) {
+            if (gatt != null && entry.connection == connection) {
+                entry.gatt = gatt;
+                return;
+            }
+
+            if (entry.connection == connection) {
+                entry.connection = null;
+                entry.state = DeviceEntry.STATE_DISCOVERED;
+            }
+        }
+
+        //Either the connect couldn't be started or Unity disconnected the device while it was starting
+        if (gatt != null) {
+            gatt.close();
+        } else {
+            BleObject failed = new BleObject("StartConnection");
+
+            failed.device = entry.address;
+            failed.deviceIndex = entry.index;
+            failed.setError("Couldn't start a connection to the device");
+
+            UnityAndroidBLE.sendToUnity(failed);
+        }
+
+        onDisconnected(entry.address);
+    }
+
+    private static class Request {
+        final DeviceEntry entry;
+        final boolean autoConnect;
+
+        Request(DeviceEntry entry, boolean autoConnect) {
+            this.entry = entry;
+            this.autoConnect = autoConnect;
+        }
+    }
+}
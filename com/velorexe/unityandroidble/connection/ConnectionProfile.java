@@ -0,0 +1,46 @@
+package com.velorexe.unityandroidble.connection;
+
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+
+/**
+ * The link parameters that get requested on a new connection before its services are discovered
+ */
+public class ConnectionProfile {
+    //Every connection starts with the default ATT MTU of 23 bytes
+    public static final int DEFAULT_MTU = 23;
+    //Largest MTU Android will negotiate
+    public static final int MAX_MTU = 517;
+
+    public static final int PRIORITY_DEFAULT = -1;
+    public static final int PHY_DEFAULT = 0;
+
+    public final int mtu;
+    public final int connectionPriority;
+    public final int phy;
+
+    /**
+     * @param mtu                the MTU to request, DEFAULT_MTU or lower leaves it as is
+     * @param connectionPriority BluetoothGatt.CONNECTION_PRIORITY_BALANCED (0), _HIGH (1), _LOW_POWER (2) or PRIORITY_DEFAULT
+     * @param phy                a mask of BluetoothDevice.PHY_LE_1M_MASK (1), _2M_MASK (2), _CODED_MASK (4) or PHY_DEFAULT
+     */
+    public ConnectionProfile(int mtu, int connectionPriority, int phy) {
+        this.mtu = Math.min(mtu, MAX_MTU);
+        this.connectionPriority = connectionPriority;
+        this.phy = phy;
+    }
+
+    public boolean requestsMtu() {
+        return mtu > DEFAULT_MTU;
+    }
+
+    public boolean requestsConnectionPriority() {
+        return connectionPriority == BluetoothGatt.CONNECTION_PRIORITY_BALANCED
+                || connectionPriority == BluetoothGatt.CONNECTION_PRIORITY_HIGH
+                || connectionPriority == BluetoothGatt.CONNECTION_PRIORITY_LOW_POWER;
+    }
+
+    public boolean requestsPhy() {
+        return (phy & (BluetoothDevice.PHY_LE_1M_MASK | BluetoothDevice.PHY_LE_2M_MASK | BluetoothDevice.PHY_LE_CODED_MASK)) != 0;
+    }
+}
@@ -19,7 +19,7 @@ public class ConnectionRunnable implements Runnable {
 
         mApplicationContext = applicationContext;
 
-        mService = new ConnectionService(mBleManager);
+        mService = new ConnectionService(mBleManager, device.getAddress(), 0);
     }
 
     @Override
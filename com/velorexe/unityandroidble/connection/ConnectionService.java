@@ -1,20 +1,33 @@
 package com.velorexe.unityandroidble.connection;
 
 import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
 import android.bluetooth.BluetoothGatt;
 import android.bluetooth.BluetoothGattCallback;
 import android.bluetooth.BluetoothGattCharacteristic;
-import android.bluetooth.BluetoothGattDescriptor;
+import android.bluetooth.BluetoothGattService;
 import android.bluetooth.BluetoothManager;
 import android.content.Intent;
-import android.os.Binder;
+import android.os.Build;
+import android.os.Handler;
 import android.os.IBinder;
-import android.util.Base64;
+import android.os.Looper;
 
 import androidx.annotation.Nullable;
 
+import com.velorexe.unityandroidble.BleLog;
 import com.velorexe.unityandroidble.BleObject;
 import com.velorexe.unityandroidble.UnityAndroidBLE;
+import com.velorexe.unityandroidble.bridge.NotificationRouter;
+import com.velorexe.unityandroidble.metrics.CharacteristicMetrics;
+import com.velorexe.unityandroidble.transport.AndroidGattClient;
+import com.velorexe.unityandroidble.transport.HandlerTaskScheduler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 public class ConnectionService {
     public static final String ACTION_DATA_AVAILABLE =
@@ -32,11 +45,18 @@ public class ConnectionService {
     private static final int STATE_CONNECTING = 1;
     private static final int STATE_DISCONNECTED = 0;
 
+    //Steps a new connection goes through before its services are discovered
+    private static final int SETUP_MTU = 0;
+    private static final int SETUP_CONNECTION_PRIORITY = 1;
+    private static final int SETUP_PHY = 2;
+    private static final int SETUP_DISCOVERY = 3;
+
+    //Not every device answers an MTU or PHY request, discovery shouldn't wait on them forever
+    private static final long SETUP_STEP_TIMEOUT = 2000;
+
     private static final String TAG = ConnectionService.class.getSimpleName();
 
     private BluetoothAdapter bluetoothAdapter;
-
-    private BluetoothGatt bluetoothGatt;
     private BluetoothManager bluetoothManager;
 
     private String bluetoothDeviceAddress;
@@ -44,8 +64,136 @@ public class ConnectionService {
     public int connectionState = 0;
     private final UnityAndroidBLE mUnityAndroidBLE;
 
-    public ConnectionService(UnityAndroidBLE bleManager) {
+    //Small index identifying this device inside binary bridge frames
+    public final int deviceIndex;
+
+    //Characteristic handles of this connection, built once its services are discovered
+    public final GattHandleTable handleTable = new GattHandleTable();
+
+    //The Gatt Server of this connection as a GattClient, addressed by the handles of the table above
+    private final AndroidGattClient mClient;
+
+    //Runs the operations of this connection on the client and completes them from its callbacks
+    private final GattConnection mConnection;
+
+    //The callback the connection is started with, BluetoothDevice.connectGatt passes it to the Gatt Server
+    public final BluetoothGattCallback gattCallback;
+
+    //Last value of every Characteristic, and which of them only report changes
+    public final CharacteristicValueCache valueCache;
+
+    //Routes the notifications of this connection to their ring, the binary bridge or a JSON message
+    public final NotificationRouter router;
+
+    //Serializes the reads and writes on this connection, released by the callbacks of the client
+    public final GattOperationQueue operationQueue;
+
+    //ATT MTU of the connection, 23 until a larger one has been negotiated
+    public volatile int mtu = ConnectionProfile.DEFAULT_MTU;
+
+    private ConnectionProfile mConnectionProfile = null;
+
+    private int mSetupStep = SETUP_DISCOVERY;
+    private final Handler mSetupHandler = new Handler(Looper.getMainLooper());
+
+    private final Runnable mSetupTimeout = new Runnable() {
+        @Override
+        public void run() {
+            int step;
+            synchronized (ConnectionService.this) {
+                step = mSetupStep;
+            }
+
+            advanceSetup(step);
+        }
+    };
+
+    private ReconnectPolicy mReconnectPolicy = null;
+    private int mReconnectAttempt = 0;
+
+    //The Gatt Server of the running reconnection attempt, every attempt that starts gets the next generation
+    private BluetoothGatt mReconnectingGatt = null;
+    private int mAttemptGeneration = 0;
+
+    //The generation of the attempt the timeout cancelled while its disconnect can still arrive, or -1
+    private int mCancelledAttempt = -1;
+
+    //Reconnecting an existing Gatt Server is a background connect that never times out by itself
+    private final Runnable mAttemptTimeout = new Runnable() {
+        @Override
+        public void run() {
+            BluetoothGatt gatt;
+
+            synchronized (ConnectionService.this) {
+                gatt = mReconnectingGatt;
+                mReconnectingGatt = null;
+
+                if (gatt != null) {
+                    mCancelledAttempt = mAttemptGeneration;
+                }
+            }
+
+            if (gatt == null || mClosed) {
+                return;
+            }
+
+            BleLog.w("Reconnection attempt to " + bluetoothDeviceAddress + " timed out");
+            mClient.disconnect();
+
+            if (!scheduleReconnect(gatt)) {
+                giveUp(gatt);
+            }
+        }
+    };
+
+    private boolean mHasConnected = false;
+    private boolean mRestoring = false;
+    private volatile boolean mClosed = false;
+
+    //Set while the Database Hash is being read for the GattCache, so the value isn't passed on to Unity
+    private volatile boolean mReadingDatabaseHash = false;
+
+    //Handle-based calls Unity made from a cached GATT table before discovery confirmed its handles
+    private final List<HeldCall> mHeldCalls = new ArrayList<HeldCall>();
+    private boolean mDiscovered = false;
+
+    //Subscriptions of this connection by service and Characteristic UUID, replayed once a lost connection is back
+    private final Map<String, Subscription> mSubscriptions = new LinkedHashMap<String, Subscription>();
+
+    private final Map<BluetoothGattCharacteristic, GattWriteStream> mWriteStreams = new HashMap<BluetoothGattCharacteristic, GattWriteStream>();
+
+    public ConnectionService(UnityAndroidBLE bleManager, String deviceAddress, int deviceIndex) {
+        this(bleManager, deviceAddress, deviceIndex, null, null);
+    }
+
+    /**
+     * @param bleManager        the manager that receives the callbacks of this connection
+     * @param deviceAddress     the device MAC Address
+     * @param deviceIndex       the index identifying the device inside binary bridge frames
+     * @param scheduler         the scheduler sharing GATT operation slots between connections, or null to not limit them
+     * @param operationListener the listener told about every finished GATT operation, or null
+     */
+    public ConnectionService(UnityAndroidBLE bleManager, String deviceAddress, int deviceIndex, GattSlotScheduler scheduler,
+                             GattOperationQueue.Listener operationListener) {
         mUnityAndroidBLE = bleManager;
+
+        bluetoothDeviceAddress = deviceAddress;
+        this.deviceIndex = deviceIndex;
+
+        mClient = new AndroidGattClient(deviceAddress, handleTable, mPlatformCallback);
+        gattCallback = mClient.gattCallback;
+
+        mConnection = new GattConnection(mClient, new HandlerTaskScheduler(), scheduler, operationListener, mConnectionListener);
+        operationQueue = mConnection.operationQueue;
+        valueCache = mConnection.valueCache;
+
+        router = new NotificationRouter(deviceIndex, valueCache, new NotificationRouter.Fallback() {
+            @Override
+            public boolean send(int handle, int sequence, long timestamp, byte[] data, CharacteristicMetrics metrics) {
+                return mUnityAndroidBLE.dispatchCharacteristicValue(bluetoothDeviceAddress, handleTable.get(handle),
+                        deviceIndex, handle, sequence, timestamp, data, metrics);
+            }
+        });
     }
 
     @Nullable
@@ -53,56 +201,479 @@ public class ConnectionService {
         return null;
     }
 
-    public final BluetoothGattCallback gattCallback = new BluetoothGattCallback() {
+    public String getDeviceAddress() {
+        return bluetoothDeviceAddress;
+    }
+
+    /**
+     * Sets the link parameters that get requested once the device has connected
+     *
+     * @param profile the profile to apply, or null to go straight to service discovery
+     */
+    public void setConnectionProfile(ConnectionProfile profile) {
+        mConnectionProfile = profile;
+    }
+
+    /**
+     * Reconnects the device with the given policy when the connection is lost, instead of tearing it down
+     *
+     * @param policy the policy to reconnect with, or null to tear the connection down right away
+     */
+    public void setReconnectPolicy(ReconnectPolicy policy) {
+        mReconnectPolicy = policy;
+    }
+
+    /**
+     * Stops any pending reconnection, used when Unity disconnects the device itself
+     */
+    public void close() {
+        mClosed = true;
+
+        //Both the setup timeout and a scheduled reconnection run on this handler
+        mSetupHandler.removeCallbacksAndMessages(null);
+        failHeldCalls("Device disconnected before its services were discovered");
+    }
+
+    public void addSubscription(BluetoothGattCharacteristic characteristic, boolean indicate) {
+        addSubscription(characteristic, indicate, false);
+    }
+
+    /**
+     * Remembers a subscription so it can be restored after a reconnection
+     *
+     * @param characteristic the Characteristic that was subscribed to
+     * @param indicate       true if it was subscribed to with indications
+     * @param changeOnly     true to drop notifications that repeat the previous value
+     */
+    public synchronized void addSubscription(BluetoothGattCharacteristic characteristic, boolean indicate, boolean changeOnly) {
+        Subscription subscription = new Subscription(characteristic, indicate, changeOnly);
+        mSubscriptions.put(subscription.getKey(), subscription);
+
+        valueCache.setChangeOnly(handleTable.getHandle(characteristic), changeOnly);
+    }
+
+    public synchronized void removeSubscription(BluetoothGattCharacteristic characteristic) {
+        mSubscriptions.remove(new Subscription(characteristic, false).getKey());
+
+        valueCache.setChangeOnly(handleTable.getHandle(characteristic), false);
+    }
+
+    public synchronized List<Subscription> getSubscriptions() {
+        return new ArrayList<Subscription>(mSubscriptions.values());
+    }
+
+    /**
+     * Queues a read of the Database Hash Characteristic, its value goes to UnityAndroidBLE.databaseHashRead
+     *
+     * @param characteristic the Database Hash Characteristic of this connection
+     */
+    public void readDatabaseHash(BluetoothGattCharacteristic characteristic) {
+        mReadingDatabaseHash = true;
+
+        operationQueue.enqueue(new ReadCharacteristicOperation("ReadDatabaseHash", handleTable.getHandle(characteristic),
+                characteristic.getService().getUuid().toString(), characteristic.getUuid().toString()) {
+            @Override
+            public void onComplete(String device, int status) {
+                //Unity never asked for the hash, so a failed read falls back to the discovered table instead of reporting an error
+                if (status != BluetoothGatt.GATT_SUCCESS) {
+                    mReadingDatabaseHash = false;
+
+                    BluetoothGatt gatt = mClient.getGatt();
+                    if (gatt != null) {
+                        mUnityAndroidBLE.databaseHashRead(gatt, null);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Holds a handle-based call until discovery has confirmed the handles Unity got from a cached GATT table
+     *
+     * @param command the command that's reported as failed if the handles turn out to be wrong
+     * @param call    the call to make again once the services have been discovered
+     * @return true if the call is held, false if the services have been discovered and it can run right away
+     */
+    public synchronized boolean holdUntilDiscovered(String command, Runnable call) {
+        if (mDiscovered) {
+            return false;
+        }
+
+        mHeldCalls.add(new HeldCall(command, call));
+        return true;
+    }
+
+    /**
+     * Releases the held calls once the handle table has been built
+     *
+     * @param handlesMatch true if the discovered table matches the cached one the handles of the held calls came from
+     */
+    public void discovered(boolean handlesMatch) {
+        List<HeldCall> calls;
+
+        synchronized (this) {
+            mDiscovered = true;
+
+            calls = new ArrayList<HeldCall>(mHeldCalls);
+            mHeldCalls.clear();
+        }
+
+        for (int i = 0; i < calls.size(); i++) {
+            if (handlesMatch) {
+                calls.get(i).call.run();
+            } else {
+                calls.get(i).fail("The GATT table changed, the handle from the cached table is no longer valid");
+            }
+        }
+    }
+
+    //Fails every held call, the handles can't be confirmed without discovery
+    private void failHeldCalls(String errorMessage) {
+        List<HeldCall> calls;
+
+        synchronized (this) {
+            mDiscovered = false;
+
+            calls = new ArrayList<HeldCall>(mHeldCalls);
+            mHeldCalls.clear();
+        }
+
+        for (int i = 0; i < calls.size(); i++) {
+            calls.get(i).fail(errorMessage);
+        }
+    }
+
+    /**
+     * Checks whether the services that were just discovered belong to a connection that was restored after it was lost,
+     * clearing the flag so the next discovery is reported normally again
+     */
+    public synchronized boolean takeRestoring() {
+        boolean restoring = mRestoring;
+        mRestoring = false;
+
+        return restoring;
+    }
+
+    /**
+     * Schedules the next reconnection attempt on the same Gatt Server.
+     * Reconnecting the existing BluetoothGatt lets Android serve the service discovery from its own cache
+     *
+     * @return false if the policy doesn't allow another attempt
+     */
+    private boolean scheduleReconnect(final BluetoothGatt gatt) {
+        ReconnectPolicy policy = mReconnectPolicy;
+        final int attempt;
+        long delay;
+
+        synchronized (this) {
+            if (policy == null || mClosed || !mHasConnected || !policy.allowsAttempt(mReconnectAttempt)) {
+                return false;
+            }
+
+            attempt = mReconnectAttempt++;
+        }
+
+        delay = policy.getDelay(attempt);
+
+        BleLog.i("Reconnecting to " + bluetoothDeviceAddress + " in " + delay + "ms, attempt " + (attempt + 1));
+        mUnityAndroidBLE.connectionLost(gatt, attempt, delay);
+
+        final long timeout = policy.attemptTimeout;
+
+        mSetupHandler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                if (mClosed) {
+                    return;
+                }
+
+                synchronized (ConnectionService.this) {
+                    //The cancelled attempt keeps its generation, its late disconnect mustn't count against this one
+                    mReconnectingGatt = gatt;
+                    mAttemptGeneration++;
+                }
+
+                //A connect that can't be started counts as a failed attempt, one that doesn't connect in time as well
+                if (mClient.connect()) {
+                    mSetupHandler.postDelayed(mAttemptTimeout, timeout);
+                } else if (!scheduleReconnect(gatt)) {
+                    giveUp(gatt);
+                }
+            }
+        }, delay);
+
+        return true;
+    }
+
+    private void giveUp(BluetoothGatt gatt) {
+        if (mClosed) {
+            return;
+        }
+
+        BleLog.i("Disconnected from " + bluetoothDeviceAddress);
+        mUnityAndroidBLE.disconnectedFromGattServer(gatt);
+        mClient.close();
+    }
+
+    /**
+     * Applies the connection profile one step at a time, MTU first, then connection priority and PHY.
+     * Steps that have a callback wait for it before the next one starts, services are discovered last
+     *
+     * @param step the step to start from
+     */
+    private void runSetupStep(int step) {
+        ConnectionProfile profile = mConnectionProfile;
+
+        if (step == SETUP_MTU) {
+            if (profile != null && profile.requestsMtu() && mClient.requestMtu(profile.mtu)) {
+                waitForSetupStep(step);
+                return;
+            }
+
+            step = SETUP_CONNECTION_PRIORITY;
+        }
+
+        if (step == SETUP_CONNECTION_PRIORITY) {
+            //Connection priority has no callback, the request is applied by the controller on its own time
+            if (profile != null && profile.requestsConnectionPriority()) {
+                mClient.getGatt().requestConnectionPriority(profile.connectionPriority);
+            }
+
+            step = SETUP_PHY;
+        }
+
+        if (step == SETUP_PHY) {
+            if (profile != null && profile.requestsPhy() && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                waitForSetupStep(step);
+                mClient.getGatt().setPreferredPhy(profile.phy, profile.phy, BluetoothDevice.PHY_OPTION_NO_PREFERRED);
+                return;
+            }
+        }
+
+        synchronized (this) {
+            mSetupStep = SETUP_DISCOVERY;
+        }
+
+        mClient.getGatt().discoverServices();
+    }
+
+    private synchronized void waitForSetupStep(int step) {
+        mSetupStep = step;
+        mSetupHandler.postDelayed(mSetupTimeout, SETUP_STEP_TIMEOUT);
+    }
+
+    private void advanceSetup(int completedStep) {
+        synchronized (this) {
+            if (mSetupStep != completedStep || completedStep == SETUP_DISCOVERY) {
+                return;
+            }
+
+            mSetupHandler.removeCallbacks(mSetupTimeout);
+        }
+
+        runSetupStep(completedStep + 1);
+    }
+
+    /**
+     * Gets the open write stream for the given Characteristic, opening a new one if there isn't one yet
+     *
+     * @param characteristic the Characteristic to stream to
+     * @param window         the amount of chunks that may be queued at once for a new stream
+     * @return the write stream of the Characteristic
+     */
+    public synchronized GattWriteStream openWriteStream(BluetoothGattCharacteristic characteristic, int window) {
+        GattWriteStream stream = mWriteStreams.get(characteristic);
+
+        if (stream == null) {
+            stream = new GattWriteStream(this, characteristic, window);
+            mWriteStreams.put(characteristic, stream);
+        }
+
+        return stream;
+    }
+
+    public synchronized GattWriteStream getWriteStream(BluetoothGattCharacteristic characteristic) {
+        return mWriteStreams.get(characteristic);
+    }
+
+    synchronized void removeWriteStream(BluetoothGattCharacteristic characteristic, GattWriteStream stream) {
+        if (mWriteStreams.get(characteristic) == stream) {
+            mWriteStreams.remove(characteristic);
+        }
+    }
+
+    /**
+     * Gets the Gatt Server of this connection, or null if it hasn't connected yet
+     */
+    public BluetoothGatt getGatt() {
+        return mClient.getGatt();
+    }
+
+    //Callbacks of the GattClient that the GattConnection doesn't handle itself
+    private final GattConnection.Listener mConnectionListener = new GattConnection.Listener() {
         @Override
-        public void onConnectionStateChange(BluetoothGatt gatt, int status, int newState) {
-            if (newState == 2) {
+        public void onConnectionStateChange(boolean connected, int status) {
+            BluetoothGatt gatt = mClient.getGatt();
+
+            if (connected) {
                 String intentAction = ACTION_GATT_CONNECTED;
 
                 connectionState = 2;
+
+                synchronized (ConnectionService.this) {
+                    mRestoring = mHasConnected;
+                    mHasConnected = true;
+                    mReconnectAttempt = 0;
+                    mReconnectingGatt = null;
+                    mCancelledAttempt = -1;
+
+                    //Handle-based calls are held from here until discovery has built the handle table
+                    mDiscovered = false;
+                }
+
+                mSetupHandler.removeCallbacks(mAttemptTimeout);
+
+                BleLog.i("Connected to " + bluetoothDeviceAddress);
                 mUnityAndroidBLE.connectedToGattServer(gatt);
 
-                gatt.discoverServices();
-            } else if (newState == 0) {
+                runSetupStep(SETUP_MTU);
+            } else {
                 String intentAction = ACTION_GATT_DISCONNECTED;
 
                 connectionState = 0;
-                mUnityAndroidBLE.disconnectedFromGattServer(gatt);
 
-                gatt.close();
+                int cancelled;
+                synchronized (ConnectionService.this) {
+                    cancelled = mCancelledAttempt;
+                    mCancelledAttempt = -1;
+                }
+
+                //Cancelling an attempt that timed out can report a disconnect, even after the next attempt has started.
+                //That attempt is already scheduled or running under its own timeout, so the disconnect is dropped
+                if (cancelled >= 0) {
+                    if (BleLog.isLoggable(BleLog.DEBUG)) {
+                        BleLog.d("Ignoring the disconnect of cancelled reconnection attempt " + cancelled + " to " + bluetoothDeviceAddress);
+                    }
+
+                    return;
+                }
+
+                if (BleLog.isLoggable(BleLog.DEBUG)) {
+                    BleLog.d("Lost the connection to " + bluetoothDeviceAddress + ", status " + status);
+                }
+
+                mSetupHandler.removeCallbacks(mSetupTimeout);
+                mSetupHandler.removeCallbacks(mAttemptTimeout);
+                mConnection.reset();
+                failHeldCalls("Device disconnected before its services were discovered");
+
+                synchronized (ConnectionService.this) {
+                    mReconnectingGatt = null;
+                }
+
+                if (!scheduleReconnect(gatt)) {
+                    giveUp(gatt);
+                }
             }
         }
 
         @Override
-        public void onServicesDiscovered(BluetoothGatt gatt, int status) {
+        public void onMtuChanged(int mtu, int status) {
+            BleObject obj = new BleObject("MtuChanged");
+            obj.device = bluetoothDeviceAddress;
+
             if (status == BluetoothGatt.GATT_SUCCESS) {
-                mUnityAndroidBLE.discoveredService(gatt);
+                ConnectionService.this.mtu = mtu;
+                obj.mtu = mtu;
+            } else {
+                obj.mtu = ConnectionService.this.mtu;
+                obj.setError("MTU request failed with status " + status);
+            }
+
+            UnityAndroidBLE.sendToUnity(obj);
+
+            advanceSetup(SETUP_MTU);
+        }
+
+        @Override
+        public void onRead(int handle, byte[] value) {
+            BluetoothGattCharacteristic characteristic = handleTable.get(handle);
+
+            if (characteristic == null) {
+                return;
+            }
+
+            if (mReadingDatabaseHash && GattCache.DATABASE_HASH_CHARACTERISTIC.equals(characteristic.getUuid())) {
+                mReadingDatabaseHash = false;
+
+                BluetoothGatt gatt = mClient.getGatt();
+                if (gatt != null) {
+                    mUnityAndroidBLE.databaseHashRead(gatt, value);
+                }
+            } else {
+                UnityAndroidBLE.sendCharacteristicRead(bluetoothDeviceAddress, characteristic, value, -1);
             }
         }
 
         @Override
-        public void onCharacteristicChanged(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
-            mUnityAndroidBLE.characteristicValueChanged(gatt, characteristic);
+        public void onNotification(int handle, long timestamp, byte[] value) {
+            mUnityAndroidBLE.characteristicValueChanged(ConnectionService.this, handle, timestamp, value);
         }
+    };
 
+    //Callbacks of the Gatt Server a GattClient has no equivalent for, passed on by the AndroidGattClient
+    private final BluetoothGattCallback mPlatformCallback = new BluetoothGattCallback() {
         @Override
-        public void onCharacteristicRead(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
-            byte[] data = characteristic.getValue();
+        public void onServicesDiscovered(BluetoothGatt gatt, int status) {
+            if (status == BluetoothGatt.GATT_SUCCESS) {
+                mUnityAndroidBLE.discoveredService(gatt);
+
+                //Discovery is a GATT operation itself, so queued operations are held until it's done
+                mConnection.ready();
+            } else {
+                BleLog.w("Couldn't discover the services of " + bluetoothDeviceAddress + ", status " + status);
 
-            BleObject obj = new BleObject("ReadFromCharacteristic");
+                //Without services the queued operations would wait for a Gatt Server that never gets set
+                operationQueue.clear();
+                failHeldCalls("Couldn't discover the services of the device");
+            }
+        }
 
+        @Override
+        public void onPhyUpdate(BluetoothGatt gatt, int txPhy, int rxPhy, int status) {
+            BleObject obj = new BleObject("PhyUpdated");
             obj.device = gatt.getDevice().getAddress();
-            obj.service = characteristic.getService().getUuid().toString();
-            obj.characteristic = characteristic.getUuid().toString();
 
-            obj.base64Message = Base64.encodeToString(data, 0);
+            obj.txPhy = txPhy;
+            obj.rxPhy = rxPhy;
+
+            if (status != BluetoothGatt.GATT_SUCCESS) {
+                obj.setError("PHY update failed with status " + status);
+            }
 
             UnityAndroidBLE.sendToUnity(obj);
-        }
 
-        @Override
-        public void onDescriptorWrite(BluetoothGatt gatt, BluetoothGattDescriptor descriptor, int status) {
-            super.onDescriptorWrite(gatt, descriptor, status);
+            advanceSetup(SETUP_PHY);
         }
     };
+
+    private class HeldCall {
+        final String command;
+        final Runnable call;
+
+        HeldCall(String command, Runnable call) {
+            this.command = command;
+            this.call = call;
+        }
+
+        void fail(String errorMessage) {
+            BleObject obj = new BleObject(command);
+
+            obj.device = getDeviceAddress();
+            obj.deviceIndex = deviceIndex;
+            obj.setError(errorMessage);
+
+            UnityAndroidBLE.sendToUnity(obj);
+        }
+    }
 }
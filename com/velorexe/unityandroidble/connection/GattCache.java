@@ -0,0 +1,103 @@
+package com.velorexe.unityandroidble.connection;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Remembers the GATT table of every device that has been connected, in app-private SharedPreferences keyed by MAC Address.
+ * The table is stored exactly as it was reported to Unity, together with the Database Hash Characteristic
+ * of the device when it has one, so a reconnection can hand Unity the known table before discovery has finished
+ * and only has to report it again if the discovered table turns out to be different
+ */
+public class GattCache {
+    public static final UUID GENERIC_ATTRIBUTE_SERVICE = UUID.fromString("00001801-0000-1000-8000-00805f9b34fb");
+    public static final UUID DATABASE_HASH_CHARACTERISTIC = UUID.fromString("00002b2a-0000-1000-8000-00805f9b34fb");
+
+    private static final String PREFERENCES_NAME = "UnityAndroidBLE.GattCache";
+
+    private static final String TABLE_SUFFIX = ".table";
+    private static final String HASH_SUFFIX = ".hash";
+
+    private final SharedPreferences mPreferences;
+
+    //Tables that have been loaded or stored this session, so the preferences are only parsed once per device
+    private final Map<String, String> mTables = new HashMap<String, String>();
+
+    public GattCache(Context context) {
+        mPreferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Gets the GATT table that was stored for a device
+     *
+     * @param address the device MAC Address
+     * @return the table as a JSON string, or null if the device hasn't been cached
+     */
+    public synchronized String getTable(String address) {
+        String table = mTables.get(address);
+
+        if (table == null) {
+            table = mPreferences.getString(address + TABLE_SUFFIX, null);
+
+            if (table != null) {
+                mTables.put(address, table);
+            }
+        }
+
+        return table;
+    }
+
+    /**
+     * Gets the Database Hash that was stored for a device
+     *
+     * @param address the device MAC Address
+     * @return the hash as a base64 string, or null if the device doesn't have one or hasn't been cached
+     */
+    public String getHash(String address) {
+        return mPreferences.getString(address + HASH_SUFFIX, null);
+    }
+
+    /**
+     * Stores the discovered GATT table of a device, the write to storage happens in the background
+     *
+     * @param address the device MAC Address
+     * @param table   the table as a JSON string
+     */
+    public synchronized void putTable(String address, String table) {
+        mTables.put(address, table);
+        mPreferences.edit().putString(address + TABLE_SUFFIX, table).apply();
+    }
+
+    /**
+     * Stores the Database Hash of a device
+     *
+     * @param address the device MAC Address
+     * @param hash    the hash as a base64 string
+     */
+    public void putHash(String address, String hash) {
+        mPreferences.edit().putString(address + HASH_SUFFIX, hash).apply();
+    }
+
+    /**
+     * Forgets the Database Hash of a device, used when it couldn't be read
+     *
+     * @param address the device MAC Address
+     */
+    public void removeHash(String address) {
+        mPreferences.edit().remove(address + HASH_SUFFIX).apply();
+    }
+
+    /**
+     * Forgets everything that was stored for a device
+     *
+     * @param address the device MAC Address
+     */
+    public synchronized void remove(String address) {
+        mTables.remove(address);
+        mPreferences.edit().remove(address + TABLE_SUFFIX).remove(address + HASH_SUFFIX).apply();
+    }
+}
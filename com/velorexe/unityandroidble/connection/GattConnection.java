@@ -0,0 +1,130 @@
+package com.velorexe.unityandroidble.connection;
+
+import android.bluetooth.BluetoothGatt;
+
+import com.velorexe.unityandroidble.transport.GattClient;
+import com.velorexe.unityandroidble.transport.TaskScheduler;
+
+/**
+ * The part of a connection that only talks to its GattClient: it serializes the operations on the connection,
+ * completes them from the callbacks of the client and keeps the value cache up to date.
+ * Everything that's specific to Android or Unity is left to the Listener, so the same code
+ * runs in ConnectionService on top of an AndroidGattClient and in the load test on a simulated peripheral
+ */
+public class GattConnection implements GattClient.Callback {
+    /**
+     * Gets told about the callbacks of the client that aren't handled by the connection itself
+     */
+    public interface Listener {
+        /**
+         * @param connected true if the client connected, false if the connection was lost or couldn't be made
+         * @param status    the status reported by the Bluetooth stack
+         */
+        void onConnectionStateChange(boolean connected, int status);
+
+        void onMtuChanged(int mtu, int status);
+
+        /**
+         * Gets called with the value of a successful read, before the operation that read it completes
+         *
+         * @param handle the handle of the Characteristic that was read
+         * @param value  the value of the Characteristic
+         */
+        void onRead(int handle, byte[] value);
+
+        /**
+         * @param handle    the handle of the Characteristic
+         * @param timestamp the time the notification arrived, in the clock of the client
+         * @param value     the value of the notification
+         */
+        void onNotification(int handle, long timestamp, byte[] value);
+    }
+
+    public final GattClient client;
+
+    //Serializes the reads and writes on this connection, released by the callbacks below
+    public final GattOperationQueue operationQueue;
+
+    //Last value of every Characteristic, and which of them only report changes
+    public final CharacteristicValueCache valueCache = new CharacteristicValueCache();
+
+    private final TaskScheduler mTimer;
+    private final Listener mListener;
+
+    /**
+     * @param client            the client of the device, its callback is set to this connection
+     * @param timer             the scheduler the timeouts of the operation queue run on
+     * @param scheduler         the scheduler sharing operation slots between connections, or null to not limit them
+     * @param operationListener the listener told about every finished operation, or null
+     * @param listener          the listener the remaining callbacks of the client go to
+     */
+    public GattConnection(GattClient client, TaskScheduler timer, GattSlotScheduler scheduler,
+                          GattOperationQueue.Listener operationListener, Listener listener) {
+        this.client = client;
+
+        mTimer = timer;
+        mListener = listener;
+
+        operationQueue = new GattOperationQueue(client.getAddress(), timer, scheduler, operationListener);
+
+        client.setCallback(this);
+    }
+
+    /**
+     * Starts executing the queued operations, once every handle of the client is valid
+     */
+    public void ready() {
+        operationQueue.setClient(client);
+    }
+
+    /**
+     * Fails every queued operation and forgets the cached values, used when the connection is lost
+     */
+    public void reset() {
+        operationQueue.clear();
+        valueCache.clear();
+    }
+
+    @Override
+    public void onConnectionStateChange(GattClient client, boolean connected, int status) {
+        mListener.onConnectionStateChange(connected, status);
+    }
+
+    @Override
+    public void onMtuChanged(GattClient client, int mtu, int status) {
+        mListener.onMtuChanged(mtu, status);
+    }
+
+    @Override
+    public void onRead(GattClient client, int handle, byte[] value, int status) {
+        //A late read of an operation that already timed out has been reported as failed
+        if (!operationQueue.isCurrent(GattOperation.CALLBACK_READ, handle)) {
+            return;
+        }
+
+        //Failed reads are reported by the operation itself
+        if (status == BluetoothGatt.GATT_SUCCESS) {
+            valueCache.put(handle, value, mTimer.elapsedRealtimeNanos());
+            mListener.onRead(handle, value);
+        }
+
+        operationQueue.complete(GattOperation.CALLBACK_READ, handle, status);
+    }
+
+    @Override
+    public void onWrite(GattClient client, int handle, int status) {
+        //Notifications that arrived while the write was in flight may still hold the value from before it
+        valueCache.invalidate(handle);
+        operationQueue.complete(GattOperation.CALLBACK_WRITE, handle, status);
+    }
+
+    @Override
+    public void onNotificationStateChanged(GattClient client, int handle, int status) {
+        operationQueue.complete(GattOperation.CALLBACK_DESCRIPTOR_WRITE, handle, status);
+    }
+
+    @Override
+    public void onNotification(GattClient client, int handle, long timestamp, byte[] value) {
+        mListener.onNotification(handle, timestamp, value);
+    }
+}
@@ -0,0 +1,225 @@
+package com.velorexe.unityandroidble.connection;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.bluetooth.BluetoothGattService;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Table of every Characteristic on a Gatt Server, built once after discovery.
+ * Each Characteristic gets a small integer handle in the order it was discovered,
+ * so reads and writes by handle are a plain array lookup without parsing any UUIDs
+ */
+public class GattHandleTable {
+    public static final int INVALID_HANDLE = -1;
+
+    //Bluetooth Base UUID that 16-bit UUIDs are expanded into
+    private static final String BASE_UUID_PREFIX = "0000";
+    private static final String BASE_UUID_SUFFIX = "-0000-1000-8000-00805f9b34fb";
+
+    private List<BluetoothGattService> mServices = new ArrayList<BluetoothGattService>();
+    private volatile BluetoothGattCharacteristic[] mCharacteristics = new BluetoothGattCharacteristic[0];
+    private final Map<BluetoothGattCharacteristic, Integer> mHandles = new HashMap<BluetoothGattCharacteristic, Integer>();
+
+    //Handles by the service and Characteristic strings exactly as Unity passes them
+    private final HandleLookup mLookup = new HandleLookup();
+
+    /**
+     * Rebuilds the table from the discovered services
+     *
+     * @param services the services that have been discovered on the Gatt Server
+     * @return true if every handle refers to a Characteristic with the same service and Characteristic UUID as before
+     */
+    public synchronized boolean build(List<BluetoothGattService> services) {
+        mHandles.clear();
+        mLookup.clear();
+
+        int count = 0;
+        for (int i = 0; i < services.size(); i++) {
+            count += services.get(i).getCharacteristics().size();
+        }
+
+        BluetoothGattCharacteristic[] characteristics = new BluetoothGattCharacteristic[count];
+        int handle = 0;
+
+        for (int i = 0; i < services.size(); i++) {
+            BluetoothGattService service = services.get(i);
+
+            String fullService = service.getUuid().toString();
+
+            List<BluetoothGattCharacteristic> serviceCharacteristics = service.getCharacteristics();
+            for (int j = 0; j < serviceCharacteristics.size(); j++, handle++) {
+                BluetoothGattCharacteristic characteristic = serviceCharacteristics.get(j);
+
+                characteristics[handle] = characteristic;
+                mHandles.put(characteristic, handle);
+
+                mLookup.add(fullService, characteristic.getUuid().toString(), handle);
+            }
+        }
+
+        boolean same = isSameLayout(mCharacteristics, characteristics);
+
+        mServices = new ArrayList<BluetoothGattService>(services);
+        mCharacteristics = characteristics;
+
+        return same;
+    }
+
+    private static boolean isSameLayout(BluetoothGattCharacteristic[] previous, BluetoothGattCharacteristic[] current) {
+        if (previous.length != current.length) {
+            return false;
+        }
+
+        for (int i = 0; i < current.length; i++) {
+            if (!previous[i].getUuid().equals(current[i].getUuid())
+                    || !previous[i].getService().getUuid().equals(current[i].getService().getUuid())) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Describes every service, Characteristic and descriptor in the table, so Unity only has to parse it once per connection.
+     * <pre>
+     * [{"uuid": service, "characteristics": [{"uuid": characteristic, "handle": 0, "properties": 18, "descriptors": [uuid]}]}]
+     * </pre>
+     *
+     * @return the GATT table as a JSON array
+     */
+    public synchronized JSONArray toJson() throws JSONException {
+        JSONArray services = new JSONArray();
+
+        for (int i = 0; i < mServices.size(); i++) {
+            BluetoothGattService service = mServices.get(i);
+            JSONArray characteristics = new JSONArray();
+
+            List<BluetoothGattCharacteristic> serviceCharacteristics = service.getCharacteristics();
+            for (int j = 0; j < serviceCharacteristics.size(); j++) {
+                BluetoothGattCharacteristic characteristic = serviceCharacteristics.get(j);
+
+                JSONArray descriptors = new JSONArray();
+                List<BluetoothGattDescriptor> characteristicDescriptors = characteristic.getDescriptors();
+                for (int k = 0; k < characteristicDescriptors.size(); k++) {
+                    descriptors.put(characteristicDescriptors.get(k).getUuid().toString());
+                }
+
+                JSONObject obj = new JSONObject();
+                obj.put("uuid", characteristic.getUuid().toString());
+                obj.put("handle", getHandle(characteristic));
+                obj.put("properties", characteristic.getProperties());
+                obj.put("descriptors", descriptors);
+
+                characteristics.put(obj);
+            }
+
+            JSONObject obj = new JSONObject();
+            obj.put("uuid", service.getUuid().toString());
+            obj.put("characteristics", characteristics);
+
+            services.put(obj);
+        }
+
+        return services;
+    }
+
+    /**
+     * Gets the Characteristic behind a handle
+     *
+     * @param handle the handle that was assigned to the Characteristic
+     * @return the Characteristic, or null if the handle doesn't exist
+     */
+    public BluetoothGattCharacteristic get(int handle) {
+        BluetoothGattCharacteristic[] characteristics = mCharacteristics;
+        return handle >= 0 && handle < characteristics.length ? characteristics[handle] : null;
+    }
+
+    /**
+     * Gets the handle of the given Characteristic, or INVALID_HANDLE if it hasn't been discovered
+     */
+    public synchronized int getHandle(BluetoothGattCharacteristic characteristic) {
+        Integer handle = mHandles.get(characteristic);
+        return handle == null ? INVALID_HANDLE : handle;
+    }
+
+    /**
+     * Resolves a service and Characteristic UUID, in either 16-bit or full form, to a handle.
+     * Strings that haven't been seen before are parsed once and remembered afterwards
+     *
+     * @param service        the UUID of the service under which the Characteristic is specified
+     * @param characteristic the UUID of the Characteristic
+     * @return the handle of the Characteristic, or INVALID_HANDLE if it can't be found
+     */
+    public synchronized int getHandle(String service, String characteristic) {
+        int handle = mLookup.get(service, characteristic);
+
+        if (handle != INVALID_HANDLE) {
+            return handle;
+        }
+
+        UUID serviceUuid = toUuid(service);
+        UUID characteristicUuid = toUuid(characteristic);
+
+        if (serviceUuid == null || characteristicUuid == null) {
+            return INVALID_HANDLE;
+        }
+
+        BluetoothGattCharacteristic[] all = mCharacteristics;
+        for (int i = 0; i < all.length; i++) {
+            if (all[i].getUuid().equals(characteristicUuid) && all[i].getService().getUuid().equals(serviceUuid)) {
+                mLookup.put(service, characteristic, i);
+                return i;
+            }
+        }
+
+        return INVALID_HANDLE;
+    }
+
+    public int size() {
+        return mCharacteristics.length;
+    }
+
+    /**
+     * Turns a 16-bit or full UUID string into a UUID
+     *
+     * @return the UUID, or null if the string isn't a valid UUID
+     */
+    public static UUID toUuid(String uuid) {
+        try {
+            if (uuid.length() == 4) {
+                return UUID.fromString(BASE_UUID_PREFIX + uuid + BASE_UUID_SUFFIX);
+            }
+
+            return UUID.fromString(uuid);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Gets the 16-bit form of a full UUID string if it's based on the Bluetooth Base UUID
+     *
+     * @return the 16-bit UUID string, or null if the UUID isn't a Bluetooth Base UUID
+     */
+    public static String toShortUuid(String uuid) {
+        String lower = uuid.toLowerCase(Locale.US);
+
+        if (lower.length() == 36 && lower.startsWith(BASE_UUID_PREFIX) && lower.endsWith(BASE_UUID_SUFFIX)) {
+            return lower.substring(4, 8);
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,115 @@
+package com.velorexe.unityandroidble.connection;
+
+import android.bluetooth.BluetoothGatt;
+
+import com.velorexe.unityandroidble.BleObject;
+import com.velorexe.unityandroidble.UnityAndroidBLE;
+import com.velorexe.unityandroidble.transport.GattClient;
+
+/**
+ * A single GATT operation that gets executed by a {@link GattOperationQueue}
+ * once every operation before it on the same connection has completed.
+ * Operations address their Characteristic by handle, so they run on any GattClient
+ */
+public abstract class GattOperation {
+    public static final long DEFAULT_TIMEOUT = 5000;
+
+    //Statuses that don't come from the Bluetooth stack itself
+    public static final int STATUS_TIMEOUT = -1;
+    public static final int STATUS_FAILED_TO_START = -2;
+    public static final int STATUS_DISCONNECTED = -3;
+
+    //Callbacks of the GattClient that can complete an operation
+    public static final int CALLBACK_READ = 0;
+    public static final int CALLBACK_WRITE = 1;
+    public static final int CALLBACK_DESCRIPTOR_WRITE = 2;
+
+    //The command that gets reported back to Unity if the operation fails
+    protected final String mCommand;
+    protected final int mHandle;
+
+    //UUIDs of the Characteristic, only used to report a failed operation
+    protected final String mService;
+    protected final String mCharacteristic;
+
+    public long timeout = DEFAULT_TIMEOUT;
+
+    //TaskScheduler.elapsedRealtimeNanos of the operation being queued and started, set by the GattOperationQueue
+    long queuedAt = 0;
+    long startedAt = -1;
+
+    /**
+     * @param command        the command that's reported to Unity if the operation fails
+     * @param handle         the handle of the Characteristic the operation is executed on
+     * @param service        the UUID of the service of the Characteristic
+     * @param characteristic the UUID of the Characteristic
+     */
+    public GattOperation(String command, int handle, String service, String characteristic) {
+        mCommand = command;
+        mHandle = handle;
+        mService = service;
+        mCharacteristic = characteristic;
+    }
+
+    public int getHandle() {
+        return mHandle;
+    }
+
+    /**
+     * Starts the operation on the given Gatt Server
+     *
+     * @param client the connection the operation is executed on
+     * @return true if the Bluetooth stack accepted the operation
+     */
+    public abstract boolean execute(GattClient client);
+
+    /**
+     * Checks whether a callback from the GattClient is the result of this operation
+     *
+     * @param callback one of the CALLBACK constants
+     * @param handle   the handle of the Characteristic the callback was called for
+     * @return true if the callback belongs to this operation
+     */
+    public abstract boolean matches(int callback, int handle);
+
+    /**
+     * Gets called when the operation has finished, failed to start or timed out
+     *
+     * @param device the MAC Address of the device the operation was queued for
+     * @param status BluetoothGatt.GATT_SUCCESS or the reason the operation failed
+     */
+    public void onComplete(String device, int status) {
+        if (status != BluetoothGatt.GATT_SUCCESS) {
+            BleObject obj = new BleObject(mCommand);
+
+            obj.device = device;
+            obj.service = mService;
+            obj.characteristic = mCharacteristic;
+
+            obj.setError(describeStatus(status));
+
+            UnityAndroidBLE.sendToUnity(obj);
+        }
+    }
+
+    /**
+     * Checks whether a status was reported by the device itself, rather than by the queue
+     * because the operation timed out, couldn't start or the connection was lost
+     */
+    public static boolean isRejected(int status) {
+        return status > BluetoothGatt.GATT_SUCCESS;
+    }
+
+    public static String describeStatus(int status) {
+        switch (status) {
+            case STATUS_TIMEOUT:
+                return "Gatt operation timed out";
+            case STATUS_FAILED_TO_START:
+                return "Bluetooth stack refused to start the Gatt operation";
+            case STATUS_DISCONNECTED:
+                return "Device disconnected before the Gatt operation completed";
+            default:
+                return "Gatt operation failed with status " + status;
+        }
+    }
+}
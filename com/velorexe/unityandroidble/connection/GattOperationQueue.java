@@ -0,0 +1,356 @@
+package com.velorexe.unityandroidble.connection;
+
+import com.velorexe.unityandroidble.BleLog;
+import com.velorexe.unityandroidble.transport.GattClient;
+import com.velorexe.unityandroidble.transport.TaskScheduler;
+
+import java.util.ArrayDeque;
+
+/**
+ * Android only allows a single outstanding GATT operation per connection,
+ * starting a new one before the previous one's callback has arrived makes it silently fail.
+ * This queue holds on to the operations of a single connection and only releases the next one
+ * once the current one has completed or timed out.
+ * Callbacks are matched against the operation they belong to, so the late callback of an operation
+ * that timed out is dropped instead of completing the operation after it.
+ * A stack that times out or refuses an operation is usually still busy, so the queue backs off before
+ * it starts anything else, and only fails an operation once it has been refused MAX_START_ATTEMPTS times.
+ * When a {@link GattSlotScheduler} is set, every operation also needs one of its slots before it starts.
+ * Timeouts and backoffs run on a TaskScheduler, so the queue runs on any GattClient, on a device or a plain JVM
+ */
+public class GattOperationQueue {
+    public static final int MAX_START_ATTEMPTS = 3;
+    public static final long START_RETRY_DELAY = 100;
+
+    /**
+     * Gets told about every operation that finishes, so it can be recorded in the metrics
+     */
+    public interface Listener {
+        /**
+         * @param device      the device MAC Address
+         * @param queueNanos  the time between the operation being queued and it being started
+         * @param activeNanos the time between the operation being started and it completing, or -1 if it never started
+         * @param status      BluetoothGatt.GATT_SUCCESS or the reason the operation failed
+         */
+        void onOperation(String device, long queueNanos, long activeNanos, int status);
+    }
+
+    private final String mDevice;
+    private final TaskScheduler mTimer;
+    private final GattSlotScheduler mScheduler;
+    private final Listener mListener;
+
+    private final ArrayDeque<GattOperation> mPending = new ArrayDeque<GattOperation>();
+
+    private GattClient mClient = null;
+    private GattOperation mCurrent = null;
+
+    //The last operation that timed out, its callback can still arrive after the next operation has started
+    private GattOperation mTimedOut = null;
+
+    //How often the operation at the head of the queue has been refused, and whether the queue waits before the next start
+    private int mStartFailures = 0;
+    private boolean mBackingOff = false;
+
+    private final Runnable mTimeoutRunnable = new Runnable() {
+        @Override
+        public void run() {
+            timeout();
+        }
+    };
+
+    private final Runnable mRetryRunnable = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (GattOperationQueue.this) {
+                mBackingOff = false;
+            }
+
+            next();
+        }
+    };
+
+    public GattOperationQueue(String device, TaskScheduler timer) {
+        this(device, timer, null, null);
+    }
+
+    /**
+     * @param device    the device MAC Address, used in the messages of failed operations
+     * @param timer     the scheduler the timeouts and backoffs run on
+     * @param scheduler the scheduler that shares operation slots between connections, or null to not limit them
+     * @param listener  the listener that's told about every finished operation, or null
+     */
+    public GattOperationQueue(String device, TaskScheduler timer, GattSlotScheduler scheduler, Listener listener) {
+        mDevice = device;
+        mTimer = timer;
+        mScheduler = scheduler;
+        mListener = listener;
+    }
+
+    /**
+     * Sets the connection the operations get executed on, operations are held until one is set
+     *
+     * @param client the connected client, its handles have to be valid
+     */
+    public void setClient(GattClient client) {
+        synchronized (this) {
+            mClient = client;
+        }
+
+        next();
+    }
+
+    /**
+     * Adds the operation to the end of the queue, it executes right away if the connection is idle
+     *
+     * @param operation the operation to execute
+     */
+    public void enqueue(GattOperation operation) {
+        operation.queuedAt = mTimer.elapsedRealtimeNanos();
+
+        synchronized (this) {
+            mPending.add(operation);
+        }
+
+        next();
+    }
+
+    /**
+     * Checks whether a callback belongs to the current operation, without completing it
+     *
+     * @param callback one of the GattOperation.CALLBACK constants
+     * @param handle   the handle of the Characteristic the callback was called for
+     * @return true if the callback is the result of the current operation
+     */
+    public synchronized boolean isCurrent(int callback, int handle) {
+        if (mTimedOut != null && mTimedOut.matches(callback, handle)) {
+            return false;
+        }
+
+        return mCurrent != null && mCurrent.matches(callback, handle);
+    }
+
+    /**
+     * Gets called from the GattClient callback when an operation has finished.
+     * Callbacks that don't belong to the current operation are dropped
+     *
+     * @param callback one of the GattOperation.CALLBACK constants
+     * @param handle   the handle of the Characteristic the callback was called for
+     * @param status   the status reported by the Bluetooth stack
+     */
+    public void complete(int callback, int handle, int status) {
+        GattOperation operation;
+
+        synchronized (this) {
+            if (mTimedOut != null && mTimedOut.matches(callback, handle)) {
+                mTimedOut = null;
+                return;
+            }
+
+            operation = mCurrent;
+            if (operation == null || !operation.matches(callback, handle)) {
+                return;
+            }
+
+            //The stack has moved on, so the timed out operation's callback isn't coming anymore
+            mTimedOut = null;
+
+            mTimer.removeCallbacks(mTimeoutRunnable);
+            mCurrent = null;
+            mStartFailures = 0;
+        }
+
+        //Operations are called outside of the lock, so they can safely queue follow-up operations
+        finish(operation, status);
+
+        releaseSlot();
+        next();
+    }
+
+    private void timeout() {
+        GattOperation operation;
+
+        synchronized (this) {
+            operation = mCurrent;
+            if (operation == null) {
+                return;
+            }
+
+            mCurrent = null;
+            mTimedOut = operation;
+
+            backOff(START_RETRY_DELAY);
+        }
+
+        BleLog.w("GATT operation on " + mDevice + " timed out");
+
+        finish(operation, GattOperation.STATUS_TIMEOUT);
+
+        releaseSlot();
+    }
+
+    /**
+     * Fails every queued operation, used when the connection is lost or its services couldn't be discovered
+     */
+    public void clear() {
+        ArrayDeque<GattOperation> failed;
+        boolean hadSlot = false;
+
+        synchronized (this) {
+            mTimer.removeCallbacks(mTimeoutRunnable);
+            mTimer.removeCallbacks(mRetryRunnable);
+            mClient = null;
+            mTimedOut = null;
+            mStartFailures = 0;
+            mBackingOff = false;
+
+            failed = new ArrayDeque<GattOperation>(mPending);
+            if (mCurrent != null) {
+                failed.addFirst(mCurrent);
+                mCurrent = null;
+                hadSlot = true;
+            }
+
+            mPending.clear();
+        }
+
+        if (mScheduler != null) {
+            wake(hadSlot ? mScheduler.release() : mScheduler.cancel(this));
+        }
+
+        while (!failed.isEmpty()) {
+            finish(failed.poll(), GattOperation.STATUS_DISCONNECTED);
+        }
+    }
+
+    /**
+     * Checks whether an operation on a Characteristic is queued or running
+     *
+     * @param handle the handle of the Characteristic to look for
+     * @return true if the Characteristic has an operation that hasn't completed yet
+     */
+    public synchronized boolean hasOperation(int handle) {
+        if (mCurrent != null && mCurrent.mHandle == handle) {
+            return true;
+        }
+
+        for (GattOperation operation : mPending) {
+            if (operation.mHandle == handle) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public synchronized int size() {
+        return mPending.size() + (mCurrent == null ? 0 : 1);
+    }
+
+    void next() {
+        while (true) {
+            GattOperation operation = null;
+            GattClient client = null;
+            boolean idle = false;
+
+            synchronized (this) {
+                if (mCurrent != null) {
+                    return;
+                }
+
+                if (mClient == null || mPending.isEmpty() || mBackingOff) {
+                    idle = true;
+                } else if (mScheduler != null && !mScheduler.acquire(this)) {
+                    //The scheduler calls next() again once it's this queue's turn
+                    return;
+                } else {
+                    operation = mPending.poll();
+                    client = mClient;
+
+                    mCurrent = operation;
+                }
+            }
+
+            if (idle) {
+                //A queue that was woken up without work, or that's backing off, shouldn't hold up the line
+                if (mScheduler != null) {
+                    wake(mScheduler.cancel(this));
+                }
+
+                return;
+            }
+
+            operation.startedAt = mTimer.elapsedRealtimeNanos();
+            boolean started = operation.execute(client);
+            boolean failed;
+
+            synchronized (this) {
+                if (mCurrent != operation) {
+                    //The callback already arrived while the operation was being started
+                    continue;
+                }
+
+                if (started) {
+                    mStartFailures = 0;
+                    mTimer.postDelayed(mTimeoutRunnable, operation.timeout);
+                    return;
+                }
+
+                mCurrent = null;
+
+                //A refused operation stays at the head and is tried again, the ones behind it wait for the stack as well
+                failed = ++mStartFailures >= MAX_START_ATTEMPTS;
+                if (failed) {
+                    mStartFailures = 0;
+                    backOff(START_RETRY_DELAY);
+                } else {
+                    mPending.addFirst(operation);
+                    backOff(START_RETRY_DELAY * mStartFailures);
+                }
+            }
+
+            operation.startedAt = -1;
+
+            if (failed) {
+                finish(operation, GattOperation.STATUS_FAILED_TO_START);
+            }
+
+            releaseSlot();
+            return;
+        }
+    }
+
+    //Holds off the next start until the delay has passed, only called while holding this queue's lock
+    private void backOff(long delay) {
+        mBackingOff = true;
+        mTimer.postDelayed(mRetryRunnable, delay);
+    }
+
+    private void finish(GattOperation operation, int status) {
+        if (mListener != null) {
+            long now = mTimer.elapsedRealtimeNanos();
+
+            //Operations that never started spent their whole life in the queue
+            if (operation.startedAt < 0) {
+                mListener.onOperation(mDevice, now - operation.queuedAt, -1, status);
+            } else {
+                mListener.onOperation(mDevice, operation.startedAt - operation.queuedAt, now - operation.startedAt, status);
+            }
+        }
+
+        operation.onComplete(mDevice, status);
+    }
+
+    private void releaseSlot() {
+        if (mScheduler != null) {
+            wake(mScheduler.release());
+        }
+    }
+
+    //Lets the queue whose turn it is start its operation, never called while holding this queue's lock
+    private void wake(GattOperationQueue queue) {
+        if (queue != null && queue != this) {
+            queue.next();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.velorexe.unityandroidble.connection;
+
+import java.util.ArrayDeque;
+
+/**
+ * Limits how many GATT operations are in flight across every connection at once.
+ * Queues that want a slot while none are free wait in line, and every freed slot goes to the queue
+ * that has been waiting the longest, so a chatty device can't starve the others.
+ * A queue that still has work after its operation completes goes to the back of the line
+ */
+public class GattSlotScheduler {
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+
+    private final ArrayDeque<GattOperationQueue> mWaiting = new ArrayDeque<GattOperationQueue>();
+
+    private int mMaxSlots = UNLIMITED;
+    private int mInFlight = 0;
+
+    /**
+     * Sets how many GATT operations may be in flight across every connection
+     *
+     * @param maxSlots the amount of operations, UNLIMITED or 0 and lower to remove the limit
+     */
+    public void setMaxSlots(int maxSlots) {
+        GattOperationQueue wake;
+
+        synchronized (this) {
+            mMaxSlots = maxSlots > 0 ? maxSlots : UNLIMITED;
+            wake = nextToWake();
+        }
+
+        if (wake != null) {
+            wake.next();
+        }
+    }
+
+    /**
+     * Takes a slot for the queue if one is free and it's the queue's turn, otherwise it's put in line
+     *
+     * @param queue the queue that wants to start an operation
+     * @return true if the queue got a slot
+     */
+    synchronized boolean acquire(GattOperationQueue queue) {
+        GattOperationQueue head = mWaiting.peek();
+
+        if (mInFlight < mMaxSlots && (head == null || head == queue)) {
+            if (head == queue) {
+                mWaiting.poll();
+            }
+
+            mInFlight++;
+            return true;
+        }
+
+        if (!mWaiting.contains(queue)) {
+            mWaiting.add(queue);
+        }
+
+        return false;
+    }
+
+    /**
+     * Gives a slot back once its operation has completed, failed to start or was cleared
+     *
+     * @return the queue whose turn it is now, its next() has to be called outside of any queue lock
+     */
+    synchronized GattOperationQueue release() {
+        if (mInFlight > 0) {
+            mInFlight--;
+        }
+
+        return nextToWake();
+    }
+
+    /**
+     * Takes a queue out of line, used when it has nothing left to execute or its connection is lost
+     *
+     * @return the queue whose turn it is now, its next() has to be called outside of any queue lock
+     */
+    synchronized GattOperationQueue cancel(GattOperationQueue queue) {
+        if (!mWaiting.remove(queue)) {
+            return null;
+        }
+
+        return nextToWake();
+    }
+
+    public synchronized int getInFlight() {
+        return mInFlight;
+    }
+
+    private GattOperationQueue nextToWake() {
+        return mInFlight < mMaxSlots ? mWaiting.peek() : null;
+    }
+}
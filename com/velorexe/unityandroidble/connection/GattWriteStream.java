@@ -0,0 +1,168 @@
+package com.velorexe.unityandroidble.connection;
+
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCharacteristic;
+
+import com.velorexe.unityandroidble.BleObject;
+import com.velorexe.unityandroidble.UnityAndroidBLE;
+import com.velorexe.unityandroidble.transport.GattClient;
+
+import java.util.ArrayDeque;
+
+/**
+ * Streams a large payload, or a continuous stream of payloads, to a single Characteristic
+ * using WRITE_TYPE_NO_RESPONSE. The data is cut into chunks that fit the negotiated MTU and
+ * paced with credits: only a window of chunks is handed to the {@link GattOperationQueue} at once
+ * and every write callback returns its credit, so other operations can still get through in between
+ */
+public class GattWriteStream {
+    public static final int DEFAULT_WINDOW = 4;
+
+    //ATT header that's taken from every write, leaving MTU - 3 bytes for the payload
+    private static final int ATT_WRITE_HEADER = 3;
+
+    private final ConnectionService mService;
+    private final BluetoothGattCharacteristic mCharacteristic;
+
+    //UUIDs of the Characteristic, reported with the result of the stream
+    private final String mServiceUuid;
+    private final String mCharacteristicUuid;
+
+    private final ArrayDeque<byte[]> mPending = new ArrayDeque<byte[]>();
+    private int mPendingOffset = 0;
+
+    private final int mWindow;
+    private int mCredits;
+
+    private boolean mClosed = false;
+    private boolean mFailed = false;
+
+    private long mBytesWritten = 0;
+
+    public GattWriteStream(ConnectionService service, BluetoothGattCharacteristic characteristic, int window) {
+        mService = service;
+        mCharacteristic = characteristic;
+
+        mServiceUuid = characteristic.getService().getUuid().toString();
+        mCharacteristicUuid = characteristic.getUuid().toString();
+
+        mWindow = Math.max(1, window);
+        mCredits = mWindow;
+    }
+
+    /**
+     * Adds data to the end of the stream, it gets sent as soon as there are credits available
+     *
+     * @param data the data to stream to the Characteristic
+     */
+    public synchronized void append(byte[] data) {
+        if (mClosed || mFailed || data == null || data.length == 0) {
+            return;
+        }
+
+        mPending.add(data);
+        pump();
+    }
+
+    /**
+     * Closes the stream, it finishes once all the appended data has been written
+     */
+    public synchronized void close() {
+        mClosed = true;
+        finishIfDrained();
+    }
+
+    public synchronized boolean isFinished() {
+        return mFailed || (mClosed && mPending.isEmpty() && mCredits == mWindow);
+    }
+
+    private void pump() {
+        int chunkSize = Math.max(1, mService.mtu - ATT_WRITE_HEADER);
+        int handle = mService.handleTable.getHandle(mCharacteristic);
+
+        while (mCredits > 0 && !mPending.isEmpty()) {
+            byte[] head = mPending.peek();
+            int length = Math.min(chunkSize, head.length - mPendingOffset);
+
+            byte[] chunk = new byte[length];
+            System.arraycopy(head, mPendingOffset, chunk, 0, length);
+
+            mPendingOffset += length;
+            if (mPendingOffset == head.length) {
+                mPending.poll();
+                mPendingOffset = 0;
+            }
+
+            mCredits--;
+            mService.valueCache.invalidate(handle);
+            mService.operationQueue.enqueue(new ChunkOperation(handle, chunk));
+        }
+    }
+
+    private synchronized void chunkCompleted(String device, int length, int status) {
+        mCredits++;
+
+        if (mFailed) {
+            return;
+        }
+
+        if (status != BluetoothGatt.GATT_SUCCESS) {
+            mFailed = true;
+            mPending.clear();
+
+            report(device, GattOperation.describeStatus(status));
+            return;
+        }
+
+        mBytesWritten += length;
+
+        pump();
+        finishIfDrained();
+    }
+
+    private void finishIfDrained() {
+        if (!mFailed && mClosed && mPending.isEmpty() && mCredits == mWindow) {
+            report(mService.getDeviceAddress(), null);
+        }
+    }
+
+    private void report(String device, String error) {
+        mService.removeWriteStream(mCharacteristic, this);
+
+        BleObject obj = new BleObject("WriteStreamFinished");
+
+        obj.device = device;
+        obj.service = mServiceUuid;
+        obj.characteristic = mCharacteristicUuid;
+
+        if (error != null) {
+            obj.setError(error + " after " + mBytesWritten + " bytes");
+        }
+
+        UnityAndroidBLE.sendToUnity(obj);
+    }
+
+    private class ChunkOperation extends GattOperation {
+        private final byte[] mChunk;
+
+        ChunkOperation(int handle, byte[] chunk) {
+            super("WriteStreamFinished", handle, mServiceUuid, mCharacteristicUuid);
+            mChunk = chunk;
+        }
+
+        @Override
+        public boolean execute(GattClient client) {
+            return client.write(mHandle, mChunk, false);
+        }
+
+        @Override
+        public boolean matches(int callback, int handle) {
+            return callback == CALLBACK_WRITE && handle == mHandle;
+        }
+
+        @Override
+        public void onComplete(String device, int status) {
+            chunkCompleted(device, mChunk.length, status);
+        }
+    }
+}
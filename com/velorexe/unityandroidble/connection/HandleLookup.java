@@ -0,0 +1,73 @@
+package com.velorexe.unityandroidble.connection;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Service string -> Characteristic string -> handle, keyed by the strings exactly as Unity passes them.
+ * Kept apart from the GattHandleTable so the lookup itself runs on a plain JVM, not thread-safe on its own
+ */
+public class HandleLookup {
+    private final Map<String, Map<String, Integer>> mLookup = new HashMap<String, Map<String, Integer>>();
+
+    /**
+     * Adds a discovered Characteristic under both the 16-bit and the full form of its UUIDs, so either resolves without parsing
+     *
+     * @param service        the full UUID of the service under which the Characteristic is specified
+     * @param characteristic the full UUID of the Characteristic
+     * @param handle         the handle of the Characteristic
+     */
+    public void add(String service, String characteristic, int handle) {
+        String shortService = GattHandleTable.toShortUuid(service);
+        String shortCharacteristic = GattHandleTable.toShortUuid(characteristic);
+
+        put(service, characteristic, handle);
+        if (shortService != null) {
+            put(shortService, characteristic, handle);
+        }
+        if (shortCharacteristic != null) {
+            put(service, shortCharacteristic, handle);
+
+            if (shortService != null) {
+                put(shortService, shortCharacteristic, handle);
+            }
+        }
+    }
+
+    /**
+     * Remembers the handle a service and Characteristic string resolved to
+     *
+     * @param service        the service string as Unity passed it
+     * @param characteristic the Characteristic string as Unity passed it
+     * @param handle         the handle the strings resolved to
+     */
+    public void put(String service, String characteristic, int handle) {
+        Map<String, Integer> characteristics = mLookup.get(service);
+
+        if (characteristics == null) {
+            characteristics = new HashMap<String, Integer>();
+            mLookup.put(service, characteristics);
+        }
+
+        //The first Characteristic with a UUID wins, the same as BluetoothGattService.getCharacteristic
+        if (!characteristics.containsKey(characteristic)) {
+            characteristics.put(characteristic, handle);
+        }
+    }
+
+    /**
+     * Looks up a service and Characteristic string
+     *
+     * @return the handle, or INVALID_HANDLE if the strings haven't been added or remembered
+     */
+    public int get(String service, String characteristic) {
+        Map<String, Integer> characteristics = mLookup.get(service);
+        Integer handle = characteristics == null ? null : characteristics.get(characteristic);
+
+        return handle == null ? GattHandleTable.INVALID_HANDLE : handle;
+    }
+
+    public void clear() {
+        mLookup.clear();
+    }
+}
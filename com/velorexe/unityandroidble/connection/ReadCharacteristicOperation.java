@@ -0,0 +1,24 @@
+package com.velorexe.unityandroidble.connection;
+
+import com.velorexe.unityandroidble.transport.GattClient;
+
+public class ReadCharacteristicOperation extends GattOperation {
+
+    public ReadCharacteristicOperation(int handle, String service, String characteristic) {
+        this("ReadFromCharacteristic", handle, service, characteristic);
+    }
+
+    public ReadCharacteristicOperation(String command, int handle, String service, String characteristic) {
+        super(command, handle, service, characteristic);
+    }
+
+    @Override
+    public boolean execute(GattClient client) {
+        return client.read(mHandle);
+    }
+
+    @Override
+    public boolean matches(int callback, int handle) {
+        return callback == CALLBACK_READ && handle == mHandle;
+    }
+}
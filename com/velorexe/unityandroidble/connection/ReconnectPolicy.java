@@ -0,0 +1,71 @@
+package com.velorexe.unityandroidble.connection;
+
+import java.util.Random;
+
+/**
+ * How a connection that was lost gets reconnected.
+ * The delay doubles with every attempt up to the maximum, and half of it is random,
+ * so devices that dropped out together don't all reconnect at the same moment
+ */
+public class ReconnectPolicy {
+    public static final long DEFAULT_INITIAL_DELAY = 250;
+    public static final long DEFAULT_MAX_DELAY = 8000;
+    public static final int DEFAULT_MAX_ATTEMPTS = 10;
+    public static final long DEFAULT_ATTEMPT_TIMEOUT = 10000;
+
+    public final long initialDelay;
+    public final long maxDelay;
+    public final int maxAttempts;
+
+    //Time in milliseconds an attempt gets to connect before it counts as failed
+    public final long attemptTimeout;
+
+    private final Random mRandom = new Random();
+
+    /**
+     * @param initialDelay the delay in milliseconds before the first attempt
+     * @param maxDelay     the longest delay in milliseconds between two attempts
+     * @param maxAttempts  the amount of attempts before the connection is given up, 0 or lower to keep trying
+     */
+    public ReconnectPolicy(long initialDelay, long maxDelay, int maxAttempts) {
+        this(initialDelay, maxDelay, maxAttempts, DEFAULT_ATTEMPT_TIMEOUT);
+    }
+
+    /**
+     * @param initialDelay   the delay in milliseconds before the first attempt
+     * @param maxDelay       the longest delay in milliseconds between two attempts
+     * @param maxAttempts    the amount of attempts before the connection is given up, 0 or lower to keep trying
+     * @param attemptTimeout the time in milliseconds an attempt gets to connect before the next one is scheduled
+     */
+    public ReconnectPolicy(long initialDelay, long maxDelay, int maxAttempts, long attemptTimeout) {
+        this.initialDelay = Math.max(1, initialDelay);
+        this.maxDelay = Math.max(this.initialDelay, maxDelay);
+        this.maxAttempts = maxAttempts;
+        this.attemptTimeout = attemptTimeout > 0 ? attemptTimeout : DEFAULT_ATTEMPT_TIMEOUT;
+    }
+
+    public boolean allowsAttempt(int attempt) {
+        return maxAttempts <= 0 || attempt < maxAttempts;
+    }
+
+    /**
+     * Gets the delay before the given attempt
+     *
+     * @param attempt the attempt, starting at 0
+     * @return the delay in milliseconds
+     */
+    public long getDelay(int attempt) {
+        long delay = maxDelay;
+
+        //Past 2^30 the shift would overflow, the maximum has long been reached by then
+        if (attempt < 30) {
+            delay = Math.min(maxDelay, initialDelay << attempt);
+        }
+
+        long half = delay / 2;
+
+        synchronized (mRandom) {
+            return half + (long) (mRandom.nextDouble() * (delay - half));
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.velorexe.unityandroidble.connection;
+
+import com.velorexe.unityandroidble.transport.GattClient;
+
+/**
+ * Writes the CCCD of a Characteristic, subscribing to or unsubscribing from its notifications or indications
+ */
+public class SetNotificationOperation extends GattOperation {
+    private final boolean mEnable;
+    private final boolean mIndicate;
+
+    /**
+     * @param command        the command that's reported to Unity once the write has completed
+     * @param handle         the handle of the Characteristic
+     * @param service        the UUID of the service of the Characteristic
+     * @param characteristic the UUID of the Characteristic
+     * @param enable         true to subscribe, false to unsubscribe
+     * @param indicate       true to subscribe to indications instead of notifications
+     */
+    public SetNotificationOperation(String command, int handle, String service, String characteristic, boolean enable, boolean indicate) {
+        super(command, handle, service, characteristic);
+        mEnable = enable;
+        mIndicate = indicate;
+    }
+
+    @Override
+    public boolean execute(GattClient client) {
+        return client.setNotification(mHandle, mEnable, mIndicate);
+    }
+
+    @Override
+    public boolean matches(int callback, int handle) {
+        return callback == CALLBACK_DESCRIPTOR_WRITE && handle == mHandle;
+    }
+}
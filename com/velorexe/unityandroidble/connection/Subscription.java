@@ -0,0 +1,34 @@
+package com.velorexe.unityandroidble.connection;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+
+import java.util.UUID;
+
+/**
+ * A Characteristic that Unity subscribed to, kept by UUID so it can be found again after the services are rediscovered
+ */
+public class Subscription {
+    public final UUID service;
+    public final UUID characteristic;
+
+    //True if the Characteristic was subscribed to with indications instead of notifications
+    public final boolean indicate;
+
+    //True if notifications that repeat the previous value are dropped before they reach Unity
+    public final boolean changeOnly;
+
+    public Subscription(BluetoothGattCharacteristic characteristic, boolean indicate) {
+        this(characteristic, indicate, false);
+    }
+
+    public Subscription(BluetoothGattCharacteristic characteristic, boolean indicate, boolean changeOnly) {
+        this.service = characteristic.getService().getUuid();
+        this.characteristic = characteristic.getUuid();
+        this.indicate = indicate;
+        this.changeOnly = changeOnly;
+    }
+
+    public String getKey() {
+        return service + "/" + characteristic;
+    }
+}
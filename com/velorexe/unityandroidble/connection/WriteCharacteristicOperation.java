@@ -0,0 +1,32 @@
+package com.velorexe.unityandroidble.connection;
+
+import com.velorexe.unityandroidble.transport.GattClient;
+
+public class WriteCharacteristicOperation extends GattOperation {
+    private final byte[] mValue;
+    private final boolean mWithResponse;
+
+    /**
+     * @param handle         the handle of the Characteristic to write to
+     * @param service        the UUID of the service of the Characteristic
+     * @param characteristic the UUID of the Characteristic
+     * @param value          the value to write, it's only handed to the client once the operation executes
+     *                       so queued writes don't overwrite each other
+     * @param withResponse   false to write without response
+     */
+    public WriteCharacteristicOperation(int handle, String service, String characteristic, byte[] value, boolean withResponse) {
+        super("WriteToCharacteristic", handle, service, characteristic);
+        mValue = value;
+        mWithResponse = withResponse;
+    }
+
+    @Override
+    public boolean execute(GattClient client) {
+        return client.write(mHandle, mValue, mWithResponse);
+    }
+
+    @Override
+    public boolean matches(int callback, int handle) {
+        return callback == CALLBACK_WRITE && handle == mHandle;
+    }
+}
@@ -0,0 +1,83 @@
+package com.velorexe.unityandroidble.metrics;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Notification counters of a single Characteristic, updated from the Binder thread without locking
+ */
+public class CharacteristicMetrics {
+    public final int characteristicIndex;
+
+    private final AtomicLong mNotifications = new AtomicLong();
+    private final AtomicLong mBytes = new AtomicLong();
+    private final AtomicLong mDropped = new AtomicLong();
+    private final AtomicLong mSuppressed = new AtomicLong();
+
+    //Time from the notification arriving until its message was handed to Unity
+    private final LatencyHistogram mDispatchLatency = new LatencyHistogram();
+
+    //Counts of the previous snapshot, only touched by the thread taking snapshots
+    private long mLastNotifications = 0;
+    private long mLastBytes = 0;
+
+    public CharacteristicMetrics(int characteristicIndex) {
+        this.characteristicIndex = characteristicIndex;
+    }
+
+    /**
+     * Counts a notification or indication of the Characteristic
+     *
+     * @param length the length of its value in bytes
+     */
+    public void onNotification(int length) {
+        mNotifications.incrementAndGet();
+        mBytes.addAndGet(length);
+    }
+
+    /**
+     * Counts a notification that never reached Unity because a ring, the binary bridge or the dispatcher was full
+     */
+    public void onDropped() {
+        mDropped.incrementAndGet();
+    }
+
+    /**
+     * Counts a notification of a change-only subscription that repeated the previous value
+     */
+    public void onSuppressed() {
+        mSuppressed.incrementAndGet();
+    }
+
+    /**
+     * Records how long a notification took to reach Unity
+     *
+     * @param nanos the time between the notification arriving and its message being sent
+     */
+    public void onDispatched(long nanos) {
+        mDispatchLatency.recordNanos(nanos);
+    }
+
+    JSONObject toJson(double seconds) throws JSONException {
+        JSONObject obj = new JSONObject();
+
+        long notifications = mNotifications.get();
+        long bytes = mBytes.get();
+
+        obj.put("characteristicIndex", characteristicIndex);
+        obj.put("notifications", notifications);
+        obj.put("bytes", bytes);
+        obj.put("dropped", mDropped.get());
+        obj.put("suppressed", mSuppressed.get());
+        obj.put("notificationsPerSecond", seconds > 0 ? (notifications - mLastNotifications) / seconds : 0);
+        obj.put("bytesPerSecond", seconds > 0 ? (bytes - mLastBytes) / seconds : 0);
+        obj.put("dispatchLatency", mDispatchLatency.toJson());
+
+        mLastNotifications = notifications;
+        mLastBytes = bytes;
+
+        return obj;
+    }
+}
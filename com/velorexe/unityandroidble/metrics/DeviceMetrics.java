@@ -0,0 +1,102 @@
+package com.velorexe.unityandroidble.metrics;
+
+import android.bluetooth.BluetoothGatt;
+
+import com.velorexe.unityandroidble.connection.GattOperation;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * GATT operation, reconnection and per-Characteristic metrics of a single device
+ */
+public class DeviceMetrics {
+    public final String device;
+
+    private final AtomicLong mOperations = new AtomicLong();
+    private final AtomicLong mFailedOperations = new AtomicLong();
+    private final AtomicLong mTimeouts = new AtomicLong();
+    private final AtomicLong mReconnects = new AtomicLong();
+
+    //Time an operation waited in the GattOperationQueue, and the time it took once it was started
+    private final LatencyHistogram mQueueWait = new LatencyHistogram();
+    private final LatencyHistogram mOperationLatency = new LatencyHistogram();
+
+    private final ConcurrentHashMap<Integer, CharacteristicMetrics> mCharacteristics = new ConcurrentHashMap<Integer, CharacteristicMetrics>();
+
+    public DeviceMetrics(String device) {
+        this.device = device;
+    }
+
+    /**
+     * Gets the metrics of a Characteristic, they're created the first time it's asked for
+     *
+     * @param characteristicIndex the handle of the Characteristic in the device's GattHandleTable
+     */
+    public CharacteristicMetrics getCharacteristic(int characteristicIndex) {
+        CharacteristicMetrics metrics = mCharacteristics.get(characteristicIndex);
+
+        if (metrics == null) {
+            CharacteristicMetrics created = new CharacteristicMetrics(characteristicIndex);
+
+            metrics = mCharacteristics.putIfAbsent(characteristicIndex, created);
+            if (metrics == null) {
+                metrics = created;
+            }
+        }
+
+        return metrics;
+    }
+
+    /**
+     * Records a GATT operation that has finished
+     *
+     * @param queueNanos  the time between the operation being queued and it being started
+     * @param activeNanos the time between the operation being started and it completing, or -1 if it never started
+     * @param status      BluetoothGatt.GATT_SUCCESS or the reason the operation failed
+     */
+    public void onOperation(long queueNanos, long activeNanos, int status) {
+        mOperations.incrementAndGet();
+
+        if (status != BluetoothGatt.GATT_SUCCESS) {
+            mFailedOperations.incrementAndGet();
+        }
+        if (status == GattOperation.STATUS_TIMEOUT) {
+            mTimeouts.incrementAndGet();
+        }
+
+        mQueueWait.recordNanos(queueNanos);
+        if (activeNanos >= 0) {
+            mOperationLatency.recordNanos(activeNanos);
+        }
+    }
+
+    public void onReconnect() {
+        mReconnects.incrementAndGet();
+    }
+
+    JSONObject toJson(double seconds) throws JSONException {
+        JSONObject obj = new JSONObject();
+
+        obj.put("device", device);
+        obj.put("operations", mOperations.get());
+        obj.put("failedOperations", mFailedOperations.get());
+        obj.put("timeouts", mTimeouts.get());
+        obj.put("reconnects", mReconnects.get());
+        obj.put("queueWait", mQueueWait.toJson());
+        obj.put("operationLatency", mOperationLatency.toJson());
+
+        JSONArray characteristics = new JSONArray();
+        for (CharacteristicMetrics metrics : mCharacteristics.values()) {
+            characteristics.put(metrics.toJson(seconds));
+        }
+
+        obj.put("characteristics", characteristics);
+
+        return obj;
+    }
+}
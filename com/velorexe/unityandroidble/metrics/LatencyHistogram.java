@@ -0,0 +1,127 @@
+package com.velorexe.unityandroidble.metrics;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free latency histogram with log-linear buckets, in the spirit of HdrHistogram.
+ * Every power of two is split into 4 sub-buckets, so a recorded value is never more than 25% off,
+ * while the whole range of a long fits in 256 counters that are allocated once.
+ * Values are recorded in microseconds, recording is a single atomic increment and never allocates
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = 64 * SUB_BUCKETS;
+
+    private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong mCount = new AtomicLong();
+    private final AtomicLong mSum = new AtomicLong();
+    private final AtomicLong mMax = new AtomicLong();
+
+    /**
+     * Records a duration
+     *
+     * @param nanos the duration in nanoseconds, negative durations are ignored
+     */
+    public void recordNanos(long nanos) {
+        record(nanos / 1000);
+    }
+
+    /**
+     * Records a duration
+     *
+     * @param micros the duration in microseconds, negative durations are ignored
+     */
+    public void record(long micros) {
+        if (micros < 0) {
+            return;
+        }
+
+        mBuckets.incrementAndGet(getBucket(micros));
+        mCount.incrementAndGet();
+        mSum.addAndGet(micros);
+
+        long max = mMax.get();
+        while (micros > max && !mMax.compareAndSet(max, micros)) {
+            max = mMax.get();
+        }
+    }
+
+    public long getCount() {
+        return mCount.get();
+    }
+
+    /**
+     * Gets the value below which the given share of the recorded values falls
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the upper bound of the bucket the percentile falls in, in microseconds, or 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        long count = mCount.get();
+        if (count == 0) {
+            return 0;
+        }
+
+        //Other threads may still be recording while the buckets are read, the max covers anything past the last one
+        long target = (long) Math.ceil(count * percentile / 100.0);
+        long seen = 0;
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += mBuckets.get(i);
+
+            if (seen >= target && seen > 0) {
+                return Math.min(getBucketUpperBound(i), mMax.get());
+            }
+        }
+
+        return mMax.get();
+    }
+
+    /**
+     * Summarizes the histogram, every value is in microseconds.
+     * <pre>
+     * {"count": 1200, "mean": 410.5, "p50": 383, "p90": 639, "p99": 1279, "max": 1830}
+     * </pre>
+     */
+    public JSONObject toJson() throws JSONException {
+        JSONObject obj = new JSONObject();
+        long count = mCount.get();
+
+        obj.put("count", count);
+        obj.put("mean", count == 0 ? 0 : (double) mSum.get() / count);
+        obj.put("p50", getPercentile(50));
+        obj.put("p90", getPercentile(90));
+        obj.put("p99", getPercentile(99));
+        obj.put("max", mMax.get());
+
+        return obj;
+    }
+
+    //Values below SUB_BUCKETS get a bucket of their own, larger ones share one per quarter of their power of two
+    private static int getBucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+
+        return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long getBucketUpperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+
+        int magnitude = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+
+        return ((SUB_BUCKETS + subBucket + 1) << (magnitude - SUB_BUCKET_BITS)) - 1;
+    }
+}
@@ -0,0 +1,82 @@
+package com.velorexe.unityandroidble.metrics;
+
+import android.os.SystemClock;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds the metrics of every device the library has talked to since metrics were enabled.
+ * Recording only touches atomics, so it's safe from the Binder, main and dispatcher threads at once.
+ * A snapshot reports the totals, and the notification and byte rates since the previous snapshot.
+ * <pre>
+ * {"uptime": 60000, "interval": 1000, "devices": [{"device": address, "operations": 12, "failedOperations": 0,
+ *     "timeouts": 0, "reconnects": 1, "queueWait": {...}, "operationLatency": {...},
+ *     "characteristics": [{"characteristicIndex": 3, "notifications": 6000, "bytes": 120000, "dropped": 0, "suppressed": 0,
+ *         "notificationsPerSecond": 100.0, "bytesPerSecond": 2000.0, "dispatchLatency": {...}}]}]}
+ * </pre>
+ */
+public class MetricsRegistry {
+    private final long mCreated = SystemClock.elapsedRealtime();
+    private long mLastSnapshot = mCreated;
+
+    private final ConcurrentHashMap<String, DeviceMetrics> mDevices = new ConcurrentHashMap<String, DeviceMetrics>();
+
+    /**
+     * Gets the metrics of a device, they're created the first time it's asked for
+     *
+     * @param device the device MAC Address
+     */
+    public DeviceMetrics getDevice(String device) {
+        DeviceMetrics metrics = mDevices.get(device);
+
+        if (metrics == null) {
+            DeviceMetrics created = new DeviceMetrics(device);
+
+            metrics = mDevices.putIfAbsent(device, created);
+            if (metrics == null) {
+                metrics = created;
+            }
+        }
+
+        return metrics;
+    }
+
+    /**
+     * Gets the metrics of a Characteristic of a device
+     *
+     * @param device              the device MAC Address
+     * @param characteristicIndex the handle of the Characteristic in the device's GattHandleTable
+     */
+    public CharacteristicMetrics getCharacteristic(String device, int characteristicIndex) {
+        return getDevice(device).getCharacteristic(characteristicIndex);
+    }
+
+    /**
+     * Takes a snapshot of every device, the rates are averaged over the time since the previous snapshot
+     *
+     * @return the snapshot as a JSON object
+     */
+    public synchronized JSONObject snapshot() throws JSONException {
+        JSONObject obj = new JSONObject();
+
+        long now = SystemClock.elapsedRealtime();
+        long interval = now - mLastSnapshot;
+        mLastSnapshot = now;
+
+        obj.put("uptime", now - mCreated);
+        obj.put("interval", interval);
+
+        JSONArray devices = new JSONArray();
+        for (DeviceMetrics metrics : mDevices.values()) {
+            devices.put(metrics.toJson(interval / 1000.0));
+        }
+
+        obj.put("devices", devices);
+
+        return obj;
+    }
+}
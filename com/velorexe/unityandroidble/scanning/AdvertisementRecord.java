@@ -0,0 +1,216 @@
+package com.velorexe.unityandroidble.scanning;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Locale;
+
+/**
+ * Walks the AD structures of a raw advertisement record without copying it.
+ * Every structure is described by the offset and length of its data inside the original record bytes,
+ * so Unity decodes the record once and slices the manufacturer and service data out of it itself.
+ * <pre>
+ * [length][type][data ...] [length][type][data ...] ...
+ * </pre>
+ */
+public class AdvertisementRecord {
+    public static final int TYPE_FLAGS = 0x01;
+    public static final int TYPE_SHORT_LOCAL_NAME = 0x08;
+    public static final int TYPE_COMPLETE_LOCAL_NAME = 0x09;
+    public static final int TYPE_TX_POWER_LEVEL = 0x0A;
+    public static final int TYPE_SERVICE_DATA_16_BIT = 0x16;
+    public static final int TYPE_SERVICE_DATA_32_BIT = 0x20;
+    public static final int TYPE_SERVICE_DATA_128_BIT = 0x21;
+    public static final int TYPE_MANUFACTURER_SPECIFIC_DATA = 0xFF;
+
+    public static final int NOT_FOUND = -1;
+
+    /**
+     * Finds the next AD structure of the given type
+     *
+     * @param record the raw advertisement record
+     * @param type   the AD type to look for
+     * @param from   the offset to start looking from, 0 for the first structure
+     * @return the offset of the structure's length byte, or NOT_FOUND
+     */
+    public static int findStructure(byte[] record, int type, int from) {
+        int offset = from;
+
+        while (offset < record.length) {
+            int length = record[offset] & 0xFF;
+
+            //A zero length marks the start of the padding at the end of the record
+            if (length == 0 || offset + 1 + length > record.length) {
+                return NOT_FOUND;
+            }
+
+            if ((record[offset + 1] & 0xFF) == type) {
+                return offset;
+            }
+
+            offset += length + 1;
+        }
+
+        return NOT_FOUND;
+    }
+
+    /**
+     * Gets the offset of the data of the structure at the given offset, just after its type byte
+     */
+    public static int dataOffset(int structure) {
+        return structure + 2;
+    }
+
+    /**
+     * Gets the length of the data of the structure at the given offset, without its type byte
+     */
+    public static int dataLength(byte[] record, int structure) {
+        return (record[structure] & 0xFF) - 1;
+    }
+
+    /**
+     * Finds the manufacturer specific data of the given company
+     *
+     * @param record         the raw advertisement record
+     * @param manufacturerId the company identifier, stored little-endian in front of the data
+     * @return the offset of the structure's length byte, or NOT_FOUND
+     */
+    public static int findManufacturerData(byte[] record, int manufacturerId) {
+        int structure = findStructure(record, TYPE_MANUFACTURER_SPECIFIC_DATA, 0);
+
+        while (structure != NOT_FOUND) {
+            if (dataLength(record, structure) >= 2 && readUInt16(record, dataOffset(structure)) == manufacturerId) {
+                return structure;
+            }
+
+            structure = findStructure(record, TYPE_MANUFACTURER_SPECIFIC_DATA, structure + (record[structure] & 0xFF) + 1);
+        }
+
+        return NOT_FOUND;
+    }
+
+    /**
+     * Checks the manufacturer payload of a company against a value, without copying it out of the record
+     *
+     * @param record         the raw advertisement record
+     * @param manufacturerId the company identifier
+     * @param offset         the offset inside the payload, after the company identifier, to compare from
+     * @param value          the bytes the payload should contain at the offset
+     * @param mask           which bits of the value have to match, or null to match all of them
+     * @return true if the record holds the company's data and it matches
+     */
+    public static boolean matchesManufacturerData(byte[] record, int manufacturerId, int offset, byte[] value, byte[] mask) {
+        int structure = findManufacturerData(record, manufacturerId);
+
+        if (structure == NOT_FOUND) {
+            return false;
+        }
+
+        //Skip the company identifier
+        int payload = dataOffset(structure) + 2;
+        int payloadLength = dataLength(record, structure) - 2;
+
+        if (offset < 0 || offset + value.length > payloadLength) {
+            return false;
+        }
+
+        for (int i = 0; i < value.length; i++) {
+            int bitMask = mask != null && i < mask.length ? mask[i] : 0xFF;
+
+            if ((record[payload + offset + i] & bitMask) != (value[i] & bitMask)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Describes the AD structures of a record as slices over its bytes.
+     * <pre>
+     * {"rssi": -60, "flags": 6, "txPower": -8,
+     *  "manufacturerData": [{"id": 76, "offset": 9, "length": 23}],
+     *  "serviceData": [{"uuid": "feaa", "offset": 20, "length": 18}]}
+     * </pre>
+     * The offsets point at the payload inside the record, past the company identifier or service UUID
+     *
+     * @param record the raw advertisement record
+     * @param rssi   the RSSI the record was received with
+     * @return the parsed record as a JSON object
+     */
+    public static JSONObject toJson(byte[] record, int rssi) throws JSONException {
+        JSONObject obj = new JSONObject();
+        obj.put("rssi", rssi);
+
+        JSONArray manufacturerData = new JSONArray();
+        JSONArray serviceData = new JSONArray();
+
+        int offset = 0;
+        while (offset < record.length) {
+            int length = record[offset] & 0xFF;
+            if (length == 0 || offset + 1 + length > record.length) {
+                break;
+            }
+
+            int type = record[offset + 1] & 0xFF;
+            int data = dataOffset(offset);
+            int dataLength = length - 1;
+
+            if (type == TYPE_FLAGS && dataLength >= 1) {
+                obj.put("flags", record[data] & 0xFF);
+            } else if (type == TYPE_TX_POWER_LEVEL && dataLength >= 1) {
+                obj.put("txPower", (int) record[data]);
+            } else if (type == TYPE_MANUFACTURER_SPECIFIC_DATA && dataLength >= 2) {
+                manufacturerData.put(slice("id", readUInt16(record, data), data + 2, dataLength - 2));
+            } else if (type == TYPE_SERVICE_DATA_16_BIT && dataLength >= 2) {
+                serviceData.put(slice("uuid", String.format(Locale.US, "%04x", readUInt16(record, data)), data + 2, dataLength - 2));
+            } else if (type == TYPE_SERVICE_DATA_32_BIT && dataLength >= 4) {
+                long uuid = readUInt16(record, data) | ((long) readUInt16(record, data + 2) << 16);
+                serviceData.put(slice("uuid", String.format(Locale.US, "%08x", uuid), data + 4, dataLength - 4));
+            } else if (type == TYPE_SERVICE_DATA_128_BIT && dataLength >= 16) {
+                serviceData.put(slice("uuid", readUuid128(record, data), data + 16, dataLength - 16));
+            }
+
+            offset += length + 1;
+        }
+
+        if (manufacturerData.length() > 0) {
+            obj.put("manufacturerData", manufacturerData);
+        }
+        if (serviceData.length() > 0) {
+            obj.put("serviceData", serviceData);
+        }
+
+        return obj;
+    }
+
+    private static JSONObject slice(String key, Object id, int offset, int length) throws JSONException {
+        JSONObject obj = new JSONObject();
+
+        obj.put(key, id);
+        obj.put("offset", offset);
+        obj.put("length", length);
+
+        return obj;
+    }
+
+    private static int readUInt16(byte[] record, int offset) {
+        return (record[offset] & 0xFF) | ((record[offset + 1] & 0xFF) << 8);
+    }
+
+    //128-bit UUIDs are stored little-endian, so the bytes are read back to front
+    private static String readUuid128(byte[] record, int offset) {
+        StringBuilder builder = new StringBuilder(36);
+
+        for (int i = 15; i >= 0; i--) {
+            builder.append(String.format(Locale.US, "%02x", record[offset + i] & 0xFF));
+
+            if (i == 12 || i == 10 || i == 8 || i == 6) {
+                builder.append('-');
+            }
+        }
+
+        return builder.toString();
+    }
+}
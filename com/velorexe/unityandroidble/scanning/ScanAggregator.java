@@ -0,0 +1,190 @@
+package com.velorexe.unityandroidble.scanning;
+
+import android.bluetooth.le.ScanResult;
+import android.bluetooth.le.ScanRecord;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Base64;
+
+import com.velorexe.unityandroidble.BleLog;
+import com.velorexe.unityandroidble.BleObject;
+import com.velorexe.unityandroidble.UnityAndroidBLE;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Keeps a smoothed RSSI, the last seen time and the latest advertisement of every device that's being scanned.
+ * Instead of forwarding every scan result, it sends a single DevicesUpdated message per report interval
+ * that only holds the devices that changed, and reports devices that haven't been seen for a while as lost
+ */
+public class ScanAggregator {
+    private final long mReportInterval;
+    private final long mStaleTimeout;
+
+    //Weight of a new RSSI sample in the exponential moving average
+    private final float mRssiSmoothing;
+    //Smallest change of the smoothed RSSI in dBm that's worth reporting
+    private final int mRssiThreshold;
+
+    private final Map<String, DeviceState> mDevices = new HashMap<String, DeviceState>();
+
+    private final Handler mHandler;
+
+    private final Runnable mReportRunnable = new Runnable() {
+        @Override
+        public void run() {
+            report();
+            mHandler.postDelayed(this, mReportInterval);
+        }
+    };
+
+    /**
+     * @param reportInterval the time in milliseconds between two DevicesUpdated messages
+     * @param staleTimeout   the time in milliseconds after which a device that hasn't been seen is reported as lost
+     * @param rssiSmoothing  the weight between 0 and 1 of a new RSSI sample, lower values smooth more
+     * @param rssiThreshold  the change of the smoothed RSSI in dBm that's reported to Unity
+     * @param looper         the Looper the reports are sent from
+     */
+    public ScanAggregator(long reportInterval, long staleTimeout, float rssiSmoothing, int rssiThreshold, Looper looper) {
+        mReportInterval = Math.max(1, reportInterval);
+        mStaleTimeout = staleTimeout;
+
+        mRssiSmoothing = Math.min(1f, Math.max(0.01f, rssiSmoothing));
+        mRssiThreshold = Math.max(0, rssiThreshold);
+
+        mHandler = new Handler(looper);
+    }
+
+    public void start() {
+        mHandler.removeCallbacks(mReportRunnable);
+        mHandler.postDelayed(mReportRunnable, mReportInterval);
+    }
+
+    public void stop() {
+        mHandler.removeCallbacks(mReportRunnable);
+    }
+
+    /**
+     * Folds a scan result into the state of its device
+     *
+     * @param result the result from the ScanCallback
+     */
+    public synchronized void update(ScanResult result) {
+        String address = result.getDevice().getAddress();
+        DeviceState state = mDevices.get(address);
+
+        if (state == null) {
+            state = new DeviceState(address, result.getRssi());
+            mDevices.put(address, state);
+        } else {
+            state.rssi += mRssiSmoothing * (result.getRssi() - state.rssi);
+        }
+
+        state.lastSeen = SystemClock.elapsedRealtimeNanos();
+
+        if (state.name == null) {
+            state.name = result.getDevice().getName();
+        }
+
+        ScanRecord record = result.getScanRecord();
+        byte[] advertisement = record == null ? null : record.getBytes();
+
+        if (advertisement != null && !Arrays.equals(advertisement, state.advertisement)) {
+            state.advertisement = advertisement;
+            state.advertisementChanged = true;
+        }
+    }
+
+    /**
+     * Sends the devices that changed since the last report and the ones that have gone stale
+     */
+    private void report() {
+        JSONArray batch = new JSONArray();
+        long now = SystemClock.elapsedRealtimeNanos();
+
+        synchronized (this) {
+            Iterator<DeviceState> iterator = mDevices.values().iterator();
+
+            while (iterator.hasNext()) {
+                DeviceState state = iterator.next();
+
+                try {
+                    if (mStaleTimeout > 0 && now - state.lastSeen > mStaleTimeout * 1000000L) {
+                        iterator.remove();
+                        batch.put(state.toLostJson());
+                    } else if (state.hasChanged(mRssiThreshold)) {
+                        batch.put(state.toJson(now));
+                    }
+                } catch (JSONException e) {
+                    BleLog.e("Couldn't encode the scan state of " + state.address, e);
+                }
+            }
+        }
+
+        if (batch.length() > 0) {
+            BleObject obj = new BleObject("DevicesUpdated");
+            obj.batch = batch;
+
+            UnityAndroidBLE.sendToUnity(obj);
+        }
+    }
+
+    private static class DeviceState {
+        final String address;
+        String name;
+
+        float rssi;
+        int reportedRssi = Integer.MIN_VALUE;
+
+        long lastSeen;
+
+        byte[] advertisement;
+        boolean advertisementChanged = false;
+
+        DeviceState(String address, int rssi) {
+            this.address = address;
+            this.rssi = rssi;
+        }
+
+        boolean hasChanged(int rssiThreshold) {
+            return advertisementChanged || Math.abs(Math.round(rssi) - reportedRssi) > rssiThreshold;
+        }
+
+        JSONObject toJson(long now) throws JSONException {
+            reportedRssi = Math.round(rssi);
+
+            JSONObject obj = new JSONObject();
+
+            obj.put("device", address);
+            obj.put("name", name);
+            obj.put("rssi", reportedRssi);
+            //Milliseconds since the device was last seen
+            obj.put("age", (now - lastSeen) / 1000000L);
+
+            if (advertisementChanged) {
+                obj.put("base64Message", Base64.encodeToString(advertisement, Base64.NO_WRAP));
+                obj.put("advertisement", AdvertisementRecord.toJson(advertisement, reportedRssi));
+                advertisementChanged = false;
+            }
+
+            return obj;
+        }
+
+        JSONObject toLostJson() throws JSONException {
+            JSONObject obj = new JSONObject();
+
+            obj.put("device", address);
+            obj.put("lost", true);
+
+            return obj;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.velorexe.unityandroidble.scanning;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.le.ScanFilter;
+import android.bluetooth.le.ScanResult;
+import android.bluetooth.le.ScanSettings;
+import android.os.ParcelUuid;
+
+import com.velorexe.unityandroidble.connection.GattHandleTable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * Filters and settings the next scan starts with.
+ * Service UUID, MAC Address and manufacturer data filters are handed to the Bluetooth controller as ScanFilters,
+ * so advertisers that don't match never wake the app. A device matches if it passes any of those filters.
+ * Android can't filter on a name prefix or on manufacturer data past its start,
+ * so those are checked in software on top of the hardware filters
+ */
+public class ScanOptions {
+    public static final String PROFILE_LOW_POWER = "LowPower";
+    public static final String PROFILE_BALANCED = "Balanced";
+    public static final String PROFILE_LOW_LATENCY = "LowLatency";
+    public static final String PROFILE_OPPORTUNISTIC = "Opportunistic";
+    public static final String PROFILE_BATCHED = "Batched";
+
+    public static final long DEFAULT_REPORT_DELAY = 1000;
+
+    private final List<ScanFilter> mFilters = new ArrayList<ScanFilter>();
+
+    private volatile String mNamePrefix = null;
+    private volatile PayloadFilter[] mPayloadFilters = new PayloadFilter[0];
+
+    private String mProfile = PROFILE_LOW_POWER;
+    private long mReportDelay = 0;
+
+    /**
+     * Only reports devices that advertise the given service
+     *
+     * @param service the 16-bit or full UUID of the service
+     * @return false if the UUID isn't valid
+     */
+    public synchronized boolean addServiceFilter(String service) {
+        UUID uuid = GattHandleTable.toUuid(service);
+
+        if (uuid == null) {
+            return false;
+        }
+
+        mFilters.add(new ScanFilter.Builder().setServiceUuid(new ParcelUuid(uuid)).build());
+        return true;
+    }
+
+    /**
+     * Only reports the device with the given MAC Address
+     *
+     * @param address the device MAC Address, in either case
+     * @return false if the MAC Address isn't valid
+     */
+    public synchronized boolean addDeviceFilter(String address) {
+        String upper = address == null ? null : address.toUpperCase(Locale.US);
+
+        if (!BluetoothAdapter.checkBluetoothAddress(upper)) {
+            return false;
+        }
+
+        mFilters.add(new ScanFilter.Builder().setDeviceAddress(upper).build());
+        return true;
+    }
+
+    /**
+     * Only reports devices whose manufacturer specific data matches
+     *
+     * @param manufacturerId the company identifier of the manufacturer
+     * @param data           the data the manufacturer specific data has to start with, or null to match any
+     * @param mask           which bits of the data have to match, or null to match all of them
+     * @return false if the company identifier is negative or the mask doesn't line up with the data
+     */
+    public synchronized boolean addManufacturerFilter(int manufacturerId, byte[] data, byte[] mask) {
+        //ScanFilter.Builder throws for these, and the exception would end up in Unity
+        if (manufacturerId < 0 || (mask != null && (data == null || mask.length != data.length))) {
+            return false;
+        }
+
+        ScanFilter.Builder builder = new ScanFilter.Builder();
+
+        if (data == null) {
+            builder.setManufacturerData(manufacturerId, new byte[0]);
+        } else if (mask == null) {
+            builder.setManufacturerData(manufacturerId, data);
+        } else {
+            builder.setManufacturerData(manufacturerId, data, mask);
+        }
+
+        mFilters.add(builder.build());
+        return true;
+    }
+
+    /**
+     * Only reports devices whose manufacturer payload holds the given value at an offset.
+     * Checked in software against the raw record without copying it, a device has to match any of the payload filters
+     *
+     * @param manufacturerId the company identifier of the manufacturer
+     * @param offset         the offset inside the payload, after the company identifier
+     * @param value          the bytes the payload has to contain at the offset
+     * @param mask           which bits of the value have to match, or null to match all of them
+     */
+    public synchronized void addManufacturerPayloadFilter(int manufacturerId, int offset, byte[] value, byte[] mask) {
+        PayloadFilter[] filters = new PayloadFilter[mPayloadFilters.length + 1];
+        System.arraycopy(mPayloadFilters, 0, filters, 0, mPayloadFilters.length);
+
+        filters[mPayloadFilters.length] = new PayloadFilter(manufacturerId, offset, value, mask);
+        mPayloadFilters = filters;
+    }
+
+    /**
+     * Only reports devices whose name starts with the given prefix
+     *
+     * @param prefix the name prefix, or null to report devices regardless of their name
+     */
+    public void setNamePrefix(String prefix) {
+        mNamePrefix = prefix == null || prefix.isEmpty() ? null : prefix;
+    }
+
+    /**
+     * Sets the ScanSettings profile the next scan uses
+     *
+     * @param profile     LowPower, Balanced, LowLatency, Opportunistic or Batched
+     * @param reportDelay the time in milliseconds the controller holds on to results for the Batched profile
+     * @return false if the profile doesn't exist
+     */
+    public synchronized boolean setProfile(String profile, long reportDelay) {
+        if (!PROFILE_LOW_POWER.equals(profile) && !PROFILE_BALANCED.equals(profile) && !PROFILE_LOW_LATENCY.equals(profile)
+                && !PROFILE_OPPORTUNISTIC.equals(profile) && !PROFILE_BATCHED.equals(profile)) {
+            return false;
+        }
+
+        mProfile = profile;
+        mReportDelay = PROFILE_BATCHED.equals(profile) ? (reportDelay > 0 ? reportDelay : DEFAULT_REPORT_DELAY) : 0;
+
+        return true;
+    }
+
+    /**
+     * Removes every filter, the next scan reports every advertiser in range again
+     */
+    public synchronized void clearFilters() {
+        mFilters.clear();
+        mNamePrefix = null;
+        mPayloadFilters = new PayloadFilter[0];
+    }
+
+    public synchronized List<ScanFilter> buildFilters() {
+        return new ArrayList<ScanFilter>(mFilters);
+    }
+
+    public synchronized ScanSettings buildSettings() {
+        ScanSettings.Builder builder = new ScanSettings.Builder();
+
+        if (PROFILE_LOW_LATENCY.equals(mProfile)) {
+            builder.setScanMode(ScanSettings.SCAN_MODE_LOW_LATENCY);
+        } else if (PROFILE_BALANCED.equals(mProfile)) {
+            builder.setScanMode(ScanSettings.SCAN_MODE_BALANCED);
+        } else if (PROFILE_OPPORTUNISTIC.equals(mProfile)) {
+            builder.setScanMode(ScanSettings.SCAN_MODE_OPPORTUNISTIC);
+        } else {
+            builder.setScanMode(ScanSettings.SCAN_MODE_LOW_POWER);
+        }
+
+        builder.setReportDelay(mReportDelay);
+        return builder.build();
+    }
+
+    /**
+     * Checks the filters that can't be offloaded to the controller
+     *
+     * @param result the result from the ScanCallback
+     * @return true if the result should be reported
+     */
+    public boolean matches(ScanResult result) {
+        if (!matchesPayload(result)) {
+            return false;
+        }
+
+        String prefix = mNamePrefix;
+
+        if (prefix == null) {
+            return true;
+        }
+
+        String name = result.getScanRecord() != null ? result.getScanRecord().getDeviceName() : null;
+        if (name == null) {
+            name = result.getDevice().getName();
+        }
+
+        return name != null && name.startsWith(prefix);
+    }
+
+    private boolean matchesPayload(ScanResult result) {
+        PayloadFilter[] filters = mPayloadFilters;
+
+        if (filters.length == 0) {
+            return true;
+        }
+
+        byte[] record = result.getScanRecord() != null ? result.getScanRecord().getBytes() : null;
+        if (record == null) {
+            return false;
+        }
+
+        for (int i = 0; i < filters.length; i++) {
+            PayloadFilter filter = filters[i];
+
+            if (AdvertisementRecord.matchesManufacturerData(record, filter.manufacturerId, filter.offset, filter.value, filter.mask)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static class PayloadFilter {
+        final int manufacturerId;
+        final int offset;
+        final byte[] value;
+        final byte[] mask;
+
+        PayloadFilter(int manufacturerId, int offset, byte[] value, byte[] mask) {
+            this.manufacturerId = manufacturerId;
+            this.offset = offset;
+            this.value = value;
+            this.mask = mask;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.velorexe.unityandroidble.transport;
+
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCallback;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.bluetooth.BluetoothProfile;
+import android.os.SystemClock;
+
+import com.velorexe.unityandroidble.UnityAndroidBLE;
+import com.velorexe.unityandroidble.connection.ConnectionProfile;
+import com.velorexe.unityandroidble.connection.GattHandleTable;
+
+/**
+ * GattClient on top of a BluetoothGatt, Characteristics are looked up in the GattHandleTable of the connection.
+ * The connection is started with its gattCallback, which translates the callbacks of the Gatt Server to handles.
+ * The callbacks a GattClient has no equivalent for, service discovery and PHY updates, go to the platform callback
+ */
+public class AndroidGattClient implements GattClient {
+    private final String mAddress;
+    private final GattHandleTable mHandleTable;
+    private final BluetoothGattCallback mPlatformCallback;
+
+    private volatile BluetoothGatt mGatt = null;
+    private volatile Callback mCallback = null;
+    private volatile int mMtu = ConnectionProfile.DEFAULT_MTU;
+
+    /**
+     * @param address          the device MAC Address
+     * @param handleTable      the handle table of the connection, the handles of the operations are looked up in it
+     * @param platformCallback the callback that receives service discovery and PHY updates
+     */
+    public AndroidGattClient(String address, GattHandleTable handleTable, BluetoothGattCallback platformCallback) {
+        mAddress = address;
+        mHandleTable = handleTable;
+        mPlatformCallback = platformCallback;
+    }
+
+    /**
+     * Gets the Gatt Server of the connection, or null if it hasn't reported back yet or has been closed
+     */
+    public BluetoothGatt getGatt() {
+        return mGatt;
+    }
+
+    @Override
+    public String getAddress() {
+        return mAddress;
+    }
+
+    @Override
+    public int getMtu() {
+        return mMtu;
+    }
+
+    @Override
+    public void setCallback(Callback callback) {
+        mCallback = callback;
+    }
+
+    /**
+     * Reconnects the Gatt Server, the first connection is started by BluetoothDevice.connectGatt with the gattCallback
+     */
+    @Override
+    public boolean connect() {
+        BluetoothGatt gatt = mGatt;
+        return gatt != null && gatt.connect();
+    }
+
+    @Override
+    public boolean requestMtu(int mtu) {
+        BluetoothGatt gatt = mGatt;
+        return gatt != null && gatt.requestMtu(mtu);
+    }
+
+    @Override
+    public boolean read(int handle) {
+        BluetoothGatt gatt = mGatt;
+        BluetoothGattCharacteristic characteristic = mHandleTable.get(handle);
+
+        return gatt != null && characteristic != null && gatt.readCharacteristic(characteristic);
+    }
+
+    @Override
+    public boolean write(int handle, byte[] value, boolean withResponse) {
+        BluetoothGatt gatt = mGatt;
+        BluetoothGattCharacteristic characteristic = mHandleTable.get(handle);
+
+        if (gatt == null || characteristic == null) {
+            return false;
+        }
+
+        //The write type is only read when the write starts, so it's restored for other writes right after
+        int writeType = characteristic.getWriteType();
+
+        characteristic.setWriteType(withResponse ? BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT : BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE);
+        characteristic.setValue(value);
+
+        boolean started = gatt.writeCharacteristic(characteristic);
+        characteristic.setWriteType(writeType);
+
+        return started;
+    }
+
+    @Override
+    public boolean setNotification(int handle, boolean enable, boolean indicate) {
+        BluetoothGatt gatt = mGatt;
+        BluetoothGattCharacteristic characteristic = mHandleTable.get(handle);
+        BluetoothGattDescriptor descriptor = characteristic == null ? null : characteristic.getDescriptor(UnityAndroidBLE.CLIENT_CHARACTERISTIC_CONFIG);
+
+        if (gatt == null || descriptor == null || !gatt.setCharacteristicNotification(characteristic, enable)) {
+            return false;
+        }
+
+        descriptor.setValue(!enable ? BluetoothGattDescriptor.DISABLE_NOTIFICATION_VALUE
+                : indicate ? BluetoothGattDescriptor.ENABLE_INDICATION_VALUE : BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE);
+
+        return gatt.writeDescriptor(descriptor);
+    }
+
+    @Override
+    public void disconnect() {
+        BluetoothGatt gatt = mGatt;
+
+        if (gatt != null) {
+            gatt.disconnect();
+        }
+    }
+
+    @Override
+    public void close() {
+        BluetoothGatt gatt = mGatt;
+        mGatt = null;
+
+        if (gatt != null) {
+            gatt.close();
+        }
+    }
+
+    public final BluetoothGattCallback gattCallback = new BluetoothGattCallback() {
+        @Override
+        public void onConnectionStateChange(BluetoothGatt gatt, int status, int newState) {
+            //The Gatt Server is only known once BluetoothDevice.connectGatt has reported back
+            mGatt = gatt;
+
+            if (newState != BluetoothProfile.STATE_CONNECTED && newState != BluetoothProfile.STATE_DISCONNECTED) {
+                return;
+            }
+
+            if (newState == BluetoothProfile.STATE_DISCONNECTED) {
+                mMtu = ConnectionProfile.DEFAULT_MTU;
+            }
+
+            Callback callback = mCallback;
+            if (callback != null) {
+                callback.onConnectionStateChange(AndroidGattClient.this, newState == BluetoothProfile.STATE_CONNECTED, status);
+            }
+        }
+
+        @Override
+        public void onServicesDiscovered(BluetoothGatt gatt, int status) {
+            mPlatformCallback.onServicesDiscovered(gatt, status);
+        }
+
+        @Override
+        public void onPhyUpdate(BluetoothGatt gatt, int txPhy, int rxPhy, int status) {
+            mPlatformCallback.onPhyUpdate(gatt, txPhy, rxPhy, status);
+        }
+
+        @Override
+        public void onMtuChanged(BluetoothGatt gatt, int mtu, int status) {
+            if (status == BluetoothGatt.GATT_SUCCESS) {
+                mMtu = mtu;
+            }
+
+            Callback callback = mCallback;
+            if (callback != null) {
+                callback.onMtuChanged(AndroidGattClient.this, mMtu, status);
+            }
+        }
+
+        @Override
+        public void onCharacteristicRead(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+            Callback callback = mCallback;
+            if (callback != null) {
+                callback.onRead(AndroidGattClient.this, mHandleTable.getHandle(characteristic), characteristic.getValue(), status);
+            }
+        }
+
+        @Override
+        public void onCharacteristicWrite(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+            Callback callback = mCallback;
+            if (callback != null) {
+                callback.onWrite(AndroidGattClient.this, mHandleTable.getHandle(characteristic), status);
+            }
+        }
+
+        @Override
+        public void onDescriptorWrite(BluetoothGatt gatt, BluetoothGattDescriptor descriptor, int status) {
+            Callback callback = mCallback;
+            if (callback != null) {
+                callback.onNotificationStateChanged(AndroidGattClient.this, mHandleTable.getHandle(descriptor.getCharacteristic()), status);
+            }
+        }
+
+        @Override
+        public void onCharacteristicChanged(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
+            //Captured first thing, so the time doesn't include any of the work after it
+            long timestamp = SystemClock.elapsedRealtimeNanos();
+
+            Callback callback = mCallback;
+            if (callback != null) {
+                callback.onNotification(AndroidGattClient.this, mHandleTable.getHandle(characteristic), timestamp, characteristic.getValue());
+            }
+        }
+    };
+}
@@ -0,0 +1,63 @@
+package com.velorexe.unityandroidble.transport;
+
+/**
+ * A connection to a single Gatt Server, addressed by Characteristic handle instead of by UUID.
+ * Mirrors the rules of BluetoothGatt: only a single operation may be outstanding at once,
+ * starting another one before the previous one's callback has arrived fails
+ */
+public interface GattClient {
+    String getAddress();
+
+    /**
+     * Gets the ATT MTU of the connection, 23 until a larger one has been negotiated
+     */
+    int getMtu();
+
+    /**
+     * Sets the callback the results of operations and notifications are delivered to
+     */
+    void setCallback(Callback callback);
+
+    boolean connect();
+
+    boolean requestMtu(int mtu);
+
+    boolean read(int handle);
+
+    /**
+     * @param handle       the handle of the Characteristic
+     * @param value        the value to write
+     * @param withResponse false to write without response, which still reports onWrite once the write has gone out
+     */
+    boolean write(int handle, byte[] value, boolean withResponse);
+
+    /**
+     * Writes the CCCD of a Characteristic
+     *
+     * @param handle   the handle of the Characteristic
+     * @param enable   true to subscribe, false to unsubscribe
+     * @param indicate true to subscribe to indications instead of notifications
+     */
+    boolean setNotification(int handle, boolean enable, boolean indicate);
+
+    void disconnect();
+
+    void close();
+
+    interface Callback {
+        void onConnectionStateChange(GattClient client, boolean connected, int status);
+
+        void onMtuChanged(GattClient client, int mtu, int status);
+
+        void onRead(GattClient client, int handle, byte[] value, int status);
+
+        void onWrite(GattClient client, int handle, int status);
+
+        void onNotificationStateChanged(GattClient client, int handle, int status);
+
+        /**
+         * @param timestamp the time the notification arrived, in the clock of the implementation in nanoseconds
+         */
+        void onNotification(GattClient client, int handle, long timestamp, byte[] value);
+    }
+}
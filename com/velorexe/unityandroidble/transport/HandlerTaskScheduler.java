@@ -0,0 +1,27 @@
+package com.velorexe.unityandroidble.transport;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+/**
+ * Runs delayed tasks on the main Looper, with the time of SystemClock.elapsedRealtimeNanos
+ */
+public class HandlerTaskScheduler implements TaskScheduler {
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    @Override
+    public void postDelayed(Runnable task, long delayMillis) {
+        mHandler.postDelayed(task, delayMillis);
+    }
+
+    @Override
+    public void removeCallbacks(Runnable task) {
+        mHandler.removeCallbacks(task);
+    }
+
+    @Override
+    public long elapsedRealtimeNanos() {
+        return SystemClock.elapsedRealtimeNanos();
+    }
+}
@@ -0,0 +1,25 @@
+package com.velorexe.unityandroidble.transport;
+
+/**
+ * Runs delayed tasks and tells the time, a Handler on the main Looper and SystemClock on a device.
+ * Swapping it out lets the operation queue run its timeouts without Android, for load tests
+ */
+public interface TaskScheduler {
+    /**
+     * Runs the task once the delay has passed
+     *
+     * @param task        the task to run
+     * @param delayMillis the delay in milliseconds
+     */
+    void postDelayed(Runnable task, long delayMillis);
+
+    /**
+     * Cancels every pending run of the task
+     */
+    void removeCallbacks(Runnable task);
+
+    /**
+     * Gets the time in nanoseconds, only meant for measuring durations
+     */
+    long elapsedRealtimeNanos();
+}
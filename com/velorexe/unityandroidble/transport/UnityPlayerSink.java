@@ -0,0 +1,13 @@
+package com.velorexe.unityandroidble.transport;
+
+import com.unity3d.player.UnityPlayer;
+
+/**
+ * Sends messages to Unity through UnityPlayer.UnitySendMessage
+ */
+public class UnityPlayerSink implements UnitySink {
+    @Override
+    public void send(String receiver, String method, String message) {
+        UnityPlayer.UnitySendMessage(receiver, method, message);
+    }
+}
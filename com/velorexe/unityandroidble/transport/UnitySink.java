@@ -0,0 +1,16 @@
+package com.velorexe.unityandroidble.transport;
+
+/**
+ * Where the messages for Unity end up, UnityPlayer.UnitySendMessage on a device.
+ * Swapping it out lets the library run without Unity, for load tests and benchmarks
+ */
+public interface UnitySink {
+    /**
+     * Delivers a message to a method on a Unity GameObject
+     *
+     * @param receiver the name of the GameObject
+     * @param method   the name of the method on the GameObject
+     * @param message  the message, usually a BleObject as JSON
+     */
+    void send(String receiver, String method, String message);
+}